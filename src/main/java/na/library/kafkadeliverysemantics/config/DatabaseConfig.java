@@ -9,6 +9,9 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
 
 @Configuration
 @EnableTransactionManagement
@@ -21,4 +24,16 @@ public class DatabaseConfig {
     public PlatformTransactionManager dbTransactionManager(EntityManagerFactory emf) {
         return new JpaTransactionManager(emf);
     }
-}
\ No newline at end of file
+
+    // Used where a database transaction has to be nested inside a Kafka transaction
+    @Bean
+    public TransactionTemplate dbTransactionTemplate(PlatformTransactionManager transactionManager) {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    // Time source for outbox leases, replaceable in tests
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+}
@@ -27,6 +27,9 @@ public class KafkaTopicConfig {
     @Value("${kafka.topic.replication-factor:3}")
     private short replicationFactor;
 
+    @Value("${kafka.topic.retention-ms:604800000}")
+    private long retentionMs;
+
     @Bean
     public NewTopic atLeastOnceTopic() {
         return TopicBuilder.name(atLeastOnceTopicName)
@@ -34,7 +37,7 @@ public class KafkaTopicConfig {
                 .replicas(replicationFactor)
                 .config("min.insync.replicas", "2")
                 .config("cleanup.policy", "delete")
-                .config("retention.ms", "604800000")
+                .config("retention.ms", String.valueOf(retentionMs))
                 .config("segment.bytes", "1073741824")
                 .config("max.message.bytes", "1000000")
                 .build();
@@ -47,7 +50,7 @@ public class KafkaTopicConfig {
                 .replicas(replicationFactor)
                 .config("min.insync.replicas", "2")
                 .config("cleanup.policy", "delete")
-                .config("retention.ms", "604800000")
+                .config("retention.ms", String.valueOf(retentionMs))
                 .config("segment.bytes", "1073741824")
                 .config("max.message.bytes", "1000000")
                 .build();
@@ -60,9 +63,29 @@ public class KafkaTopicConfig {
                 .replicas(replicationFactor)
                 .config("min.insync.replicas", "2")
                 .config("cleanup.policy", "delete")
-                .config("retention.ms", "604800000")
+                .config("retention.ms", String.valueOf(retentionMs))
                 .config("segment.bytes", "1073741824")
                 .config("max.message.bytes", "1000000")
                 .build();
     }
-}
\ No newline at end of file
+
+    // Dead-letter topics of the parallel and flow-controlled consumers
+    @Bean
+    public NewTopic atLeastOnceDeadLetterTopic() {
+        return deadLetterTopic(atLeastOnceTopicName);
+    }
+
+    @Bean
+    public NewTopic exactlyOnceDeadLetterTopic() {
+        return deadLetterTopic(exactlyOnceTopicName);
+    }
+
+    private NewTopic deadLetterTopic(String topicName) {
+        return TopicBuilder.name(topicName + "-dlt")
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .config("min.insync.replicas", "2")
+                .config("retention.ms", String.valueOf(retentionMs))
+                .build();
+    }
+}
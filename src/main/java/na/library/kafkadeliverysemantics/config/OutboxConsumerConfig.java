@@ -0,0 +1,68 @@
+package na.library.kafkadeliverysemantics.config;
+
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.service.AggregateSequenceFilter;
+import na.library.kafkadeliverysemantics.service.OutboxPayloadDeserializer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@Profile("outbox")
+public class OutboxConsumerConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${consumer.outbox.group.id}")
+    private String groupId;
+
+    @Value("${spring.kafka.consumer.key-deserializer}")
+    private String keyDeserializer;
+
+    @Value("${spring.kafka.consumer.properties.spring.json.trusted.packages}")
+    private String trustedPackages;
+
+    @Bean
+    public ConsumerFactory<String, Object> outboxEventConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
+        // Malformed values become a header instead of failing poll(); see QuarantineService
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, OutboxPayloadDeserializer.class);
+        // Compressed outbox records carry no type header; every outbox topic carries Message events
+        props.put(JsonDeserializer.VALUE_DEFAULT_TYPE, Message.class.getName());
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // The relay publishes transactionally
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put("spring.json.trusted.packages", trustedPackages);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> outboxEventContainerFactory(AggregateSequenceFilter sequenceFilter,
+                                                                                        DefaultErrorHandler quarantineErrorHandler) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, Object>();
+        factory.setConsumerFactory(outboxEventConsumerFactory());
+
+        // Replayed events are dropped by sequence before reaching the listener
+        factory.setRecordFilterStrategy(sequenceFilter);
+        factory.setRecordInterceptor(sequenceFilter);
+        factory.setCommonErrorHandler(quarantineErrorHandler);
+        return factory;
+    }
+}
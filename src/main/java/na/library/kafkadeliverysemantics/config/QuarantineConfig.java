@@ -0,0 +1,47 @@
+package na.library.kafkadeliverysemantics.config;
+
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+public class QuarantineConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    // Replays quarantined values byte for byte
+    @Bean
+    public ProducerFactory<String, byte[]> quarantineReplayProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return new DefaultKafkaProducerFactory<>(configProps);
+    }
+
+    @Bean("quarantineReplayKafkaTemplate")
+    public KafkaTemplate<String, byte[]> quarantineReplayKafkaTemplate() {
+        return new KafkaTemplate<>(quarantineReplayProducerFactory());
+    }
+
+    // Deserialization failures are not retryable, so they reach the quarantine on the first attempt;
+    // other failures keep the default retries before being logged and skipped
+    @Bean
+    public DefaultErrorHandler quarantineErrorHandler(QuarantineService quarantineService) {
+        return new DefaultErrorHandler(quarantineService);
+    }
+}
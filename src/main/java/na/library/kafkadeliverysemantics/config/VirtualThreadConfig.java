@@ -0,0 +1,35 @@
+package na.library.kafkadeliverysemantics.config;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.kafka.config.AbstractKafkaListenerContainerFactory;
+
+/**
+ * Opt-in virtual threads (spring.threads.virtual.enabled=true).
+ * Spring Boot already switches Tomcat request handling and @Scheduled methods over; the listener
+ * container factories here are defined by hand, so their consumer threads are switched explicitly.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+
+    @Bean
+    public static BeanPostProcessor virtualThreadListenerContainers() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof AbstractKafkaListenerContainerFactory<?, ?, ?> factory) {
+                    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(beanName + "-");
+                    executor.setVirtualThreads(true);
+                    factory.getContainerProperties().setListenerTaskExecutor(executor);
+                }
+                return bean;
+            }
+        };
+    }
+}
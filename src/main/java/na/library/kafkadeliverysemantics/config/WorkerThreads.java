@@ -0,0 +1,23 @@
+package na.library.kafkadeliverysemantics.config;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread factories for the application's own worker pools (outbox relay, fast path, parallel consumer).
+ * With spring.threads.virtual.enabled=true they create virtual threads, so workers blocked on
+ * Kafka acknowledgements or JDBC calls no longer hold a platform thread each.
+ */
+public final class WorkerThreads {
+
+    private WorkerThreads() {
+    }
+
+    public static ThreadFactory factory(String namePrefix, boolean virtual) {
+        if (virtual) {
+            return Thread.ofVirtual().name(namePrefix, 1).factory();
+        }
+        return new CustomizableThreadFactory(namePrefix);
+    }
+}
@@ -1,14 +1,26 @@
 package na.library.kafkadeliverysemantics.config.atleastonce;
 
+import na.library.kafkadeliverysemantics.service.flowcontrol.BackpressureDispatcher;
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -32,13 +44,21 @@ public class AtLeastOnceConsumerConfig {
     @Value("${spring.kafka.consumer.properties.spring.json.trusted.packages}")
     private String trustedPackages;
 
+    @Value("${kafka.topic.partitions:3}")
+    private int partitions;
+
+    @Value("${kafka.topic.replication-factor:3}")
+    private short replicationFactor;
+
     @Bean
     public ConsumerFactory<String, Object> atLeastOnceConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
+        // Malformed values become a header instead of failing poll(); see QuarantineService
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, valueDeserializer);
         props.put("spring.json.trusted.packages", trustedPackages);
         // At-least-once specific configurations
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false); // Disable auto commit
@@ -48,12 +68,72 @@ public class AtLeastOnceConsumerConfig {
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Object> atLeastOnceContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, Object> atLeastOnceContainerFactory(DefaultErrorHandler quarantineErrorHandler) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, Object>();
+        factory.setConsumerFactory(atLeastOnceConsumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        // Replaced by the retry-topic error handler when retry topics are active
+        factory.setCommonErrorHandler(quarantineErrorHandler);
+        return factory;
+    }
+
+    // Whole polls for the key-ordered parallel consumer, which commits offsets itself
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> atLeastOnceParallelContainerFactory(QuarantineService quarantineService) {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, Object>();
         factory.setConsumerFactory(atLeastOnceConsumerFactory());
+        factory.setBatchListener(true);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.setRecordFilterStrategy(quarantineService::quarantineIfPoisoned);
+        // A poll filtered down to nothing never reaches the listener, so the container commits it instead
+        factory.setAckDiscarded(true);
         return factory;
     }
+
+    // Record listener whose acknowledgements arrive from worker threads and out of order;
+    // asyncAcks defers each commit until all earlier offsets are acknowledged too.
+    // The flow-control dispatcher listens for rebalances to settle the work of revoked partitions.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> atLeastOnceAsyncContainerFactory(
+            DefaultErrorHandler quarantineErrorHandler, ObjectProvider<BackpressureDispatcher> dispatcher) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, Object>();
+        factory.setConsumerFactory(atLeastOnceConsumerFactory());
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        factory.setCommonErrorHandler(quarantineErrorHandler);
+        dispatcher.ifAvailable(factory.getContainerProperties()::setConsumerRebalanceListener);
+        return factory;
+    }
+
+    // Records the parallel and flow-controlled consumers give up on after their retries;
+    // same topic as the retry-topic DLT
+    @Bean
+    public DeadLetterPublishingRecoverer atLeastOnceDeadLetterRecoverer(
+            @Qualifier("atLeastOnceKafkaTemplate") KafkaTemplate<String, Object> atLeastOnceKafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(atLeastOnceKafkaTemplate,
+                (record, exception) -> new TopicPartition(record.topic() + "-dlt", -1));
+    }
+
+    // Failed records move to delay topics (1s, 10s, 60s) and then to the dead-letter topic,
+    // so one poison message no longer stalls its partition. Values that fail to deserialize skip the retries
+    // and are quarantined instead of reaching the dead-letter topic (see AtLeastOnceRetryTopicSupport);
+    // a DLT failure is logged instead of being republished to the DLT.
+    // Retry topics need a synchronous record listener, so the parallel and flow-controlled consumers retry themselves.
+    @Bean
+    @ConditionalOnExpression("!${consumer.parallel.enabled:false} and !${consumer.flow-control.enabled:false}")
+    public RetryTopicConfiguration atLeastOnceRetryTopicConfiguration(
+            @Qualifier("atLeastOnceKafkaTemplate") KafkaTemplate<String, Object> atLeastOnceKafkaTemplate) {
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic("at-least-once-topic")
+                .exponentialBackoff(1000, 10, 60000)
+                .maxAttempts(4)
+                .suffixTopicsWithIndexValues()
+                .listenerFactory("atLeastOnceContainerFactory")
+                .dltHandlerMethod("atLeastOnceConsumerService", "handleDeadLetter")
+                .doNotRetryOnDltFailure()
+                .autoCreateTopicsWith(partitions, replicationFactor)
+                .create(atLeastOnceKafkaTemplate);
+    }
 //    @Bean
 //    public ConcurrentKafkaListenerContainerFactory<String, Object> atLeastOnceContainerFactory() {
 //        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
@@ -71,4 +151,5 @@ public class AtLeastOnceConsumerConfig {
 //
 //        return factory;
 //    }
+
 }
\ No newline at end of file
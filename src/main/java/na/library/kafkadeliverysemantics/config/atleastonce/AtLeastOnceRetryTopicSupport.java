@@ -0,0 +1,46 @@
+package na.library.kafkadeliverysemantics.config.atleastonce;
+
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.retrytopic.DeadLetterPublishingRecovererFactory;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationSupport;
+
+/**
+ * Sends values that fail to deserialize on the retry-topic path to the quarantine. The retry topics treat
+ * a DeserializationException as fatal and would publish it straight to the dead-letter topic, where the
+ * JSON template writes the raw bytes as a base64 string and nothing lands in quarantined_records.
+ */
+@Configuration
+@Profile("at-least-once")
+@ConditionalOnExpression("!${consumer.parallel.enabled:false} and !${consumer.flow-control.enabled:false}")
+public class AtLeastOnceRetryTopicSupport extends RetryTopicConfigurationSupport {
+
+    private final ObjectProvider<QuarantineService> quarantineService;
+
+    public AtLeastOnceRetryTopicSupport(ObjectProvider<QuarantineService> quarantineService) {
+        this.quarantineService = quarantineService;
+    }
+
+    @Override
+    protected java.util.function.Consumer<DeadLetterPublishingRecovererFactory> configureDeadLetterPublishingContainerFactory() {
+        return factory -> factory.setDeadLetterPublisherCreator((templateResolver, destinationResolver) ->
+                new DeadLetterPublishingRecoverer(templateResolver, destinationResolver) {
+
+                    @Override
+                    public void accept(ConsumerRecord<?, ?> record, Consumer<?, ?> consumer, Exception exception) {
+                        QuarantineService quarantine = quarantineService.getObject();
+                        if (quarantine.isDeserializationFailure(record, exception)) {
+                            quarantine.accept(record, exception);
+                        } else {
+                            super.accept(record, consumer, exception);
+                        }
+                    }
+                });
+    }
+}
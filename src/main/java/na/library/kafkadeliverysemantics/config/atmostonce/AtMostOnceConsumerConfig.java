@@ -1,5 +1,6 @@
 package na.library.kafkadeliverysemantics.config.atmostonce;
 
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -9,6 +10,8 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -38,7 +41,9 @@ public class AtMostOnceConsumerConfig {
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
+        // Malformed values become a header instead of failing poll(); see QuarantineService
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ErrorHandlingDeserializer.class);
+        props.put(ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, valueDeserializer);
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true); // Auto commit
         props.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, "100");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
@@ -47,10 +52,21 @@ public class AtMostOnceConsumerConfig {
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Object> atMostOnceContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, Object> atMostOnceContainerFactory(DefaultErrorHandler quarantineErrorHandler) {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, Object>();
         factory.setConsumerFactory(atMostOnceConsumerFactory());
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD); // Optional
+        factory.setCommonErrorHandler(quarantineErrorHandler);
+        return factory;
+    }
+
+    // Whole polls for the key-ordered parallel consumer (consumer.parallel.enabled=true)
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> atMostOnceParallelContainerFactory(QuarantineService quarantineService) {
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, Object>();
+        factory.setConsumerFactory(atMostOnceConsumerFactory());
+        factory.setBatchListener(true);
+        factory.setRecordFilterStrategy(quarantineService::quarantineIfPoisoned);
         return factory;
     }
 }
\ No newline at end of file
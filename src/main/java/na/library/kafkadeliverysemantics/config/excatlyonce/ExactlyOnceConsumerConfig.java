@@ -1,6 +1,12 @@
 package na.library.kafkadeliverysemantics.config.excatlyonce;
 
+import na.library.kafkadeliverysemantics.service.exactlyonce.DedupAwareDeserializer;
+import na.library.kafkadeliverysemantics.service.exactlyonce.PartitionDedupState;
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,7 +14,11 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -26,22 +36,22 @@ public class ExactlyOnceConsumerConfig {
     @Value("${spring.kafka.consumer.key-deserializer}")
     private String keyDeserializer;
 
-    @Value("${spring.kafka.consumer.value-deserializer}")
-    private String valueDeserializer;
-
     @Value("${spring.kafka.client-id}")
     private String clientId;
 
     @Value("${spring.kafka.consumer.properties.spring.json.trusted.packages}")
     private String trustedPackages;
 
+    // Incremental rebalancing: only partitions that move are revoked and warmed up again
+    @Value("${consumer.exactlyonce.cooperative-rebalance:true}")
+    private boolean cooperativeRebalance;
+
     @Bean
-    public ConsumerFactory<String, Object> exactlyOnceConsumerFactory() {
+    public ConsumerFactory<String, Object> exactlyOnceConsumerFactory(DedupAwareDeserializer dedupAwareDeserializer) {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, keyDeserializer);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, valueDeserializer);
 
         // Exactly-once specific configurations
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
@@ -50,18 +60,82 @@ public class ExactlyOnceConsumerConfig {
         // Ensure the consumer reads only committed messages (from successful transactions)
         props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         props.put("spring.json.trusted.packages", trustedPackages);
-        return new DefaultKafkaConsumerFactory<>(props);
+        if (cooperativeRebalance) {
+            props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        }
+        // JSON values, parsed only for message ids not already known to be processed;
+        // malformed values become a header instead of failing poll()
+        return new DefaultKafkaConsumerFactory<>(props, null, new ErrorHandlingDeserializer<>(dedupAwareDeserializer));
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Object> exactlyOnceContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, Object> exactlyOnceContainerFactory(
+            ConsumerFactory<String, Object> exactlyOnceConsumerFactory, PartitionDedupState partitionDedupState,
+            DefaultErrorHandler quarantineErrorHandler) {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(exactlyOnceConsumerFactory());
+        factory.setConsumerFactory(exactlyOnceConsumerFactory);
 
         // Set acknowledgment mode to MANUAL for transaction control
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
 
+        // Keep per-partition dedup state in step with the assignment
+        factory.getContainerProperties().setConsumerRebalanceListener(partitionDedupState);
+
+        // Drop duplicates whose payload the deserializer skipped, committing their offsets
+        factory.setRecordFilterStrategy(record -> DedupAwareDeserializer.isSkippedDuplicate(record.value(), record.headers()));
+        factory.setAckDiscarded(true);
+
+        // Undeserializable records are quarantined and their offsets committed
+        factory.setCommonErrorHandler(quarantineErrorHandler);
+
         return factory;
     }
-}
\ No newline at end of file
+
+    // Delivers each poll as a List, used when consumer.exactlyonce.mode=batch
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> exactlyOnceBatchContainerFactory(
+            ConsumerFactory<String, Object> exactlyOnceConsumerFactory, PartitionDedupState partitionDedupState,
+            QuarantineService quarantineService) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(exactlyOnceConsumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(partitionDedupState);
+
+        // Drop duplicates whose payload the deserializer skipped, and quarantine undeserializable records
+        factory.setRecordFilterStrategy(record -> quarantineService.quarantineIfPoisoned(record)
+                || DedupAwareDeserializer.isSkippedDuplicate(record.value(), record.headers()));
+        factory.setAckDiscarded(true);
+
+        return factory;
+    }
+
+    // Whole polls for the key-ordered parallel consumer, which commits offsets itself
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> exactlyOnceParallelContainerFactory(
+            ConsumerFactory<String, Object> exactlyOnceConsumerFactory, PartitionDedupState partitionDedupState,
+            QuarantineService quarantineService) {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(exactlyOnceConsumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setConsumerRebalanceListener(partitionDedupState);
+        factory.setRecordFilterStrategy(record -> quarantineService.quarantineIfPoisoned(record)
+                || DedupAwareDeserializer.isSkippedDuplicate(record.value(), record.headers()));
+        // A poll filtered down to nothing never reaches the listener, so the container commits it instead
+        factory.setAckDiscarded(true);
+
+        return factory;
+    }
+
+    // Records the parallel consumer gives up on after its retries
+    @Bean
+    public DeadLetterPublishingRecoverer exactlyOnceDeadLetterRecoverer(
+            @Qualifier("exactlyOnceKafkaTemplate") KafkaTemplate<String, Object> exactlyOnceKafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(exactlyOnceKafkaTemplate,
+                (record, exception) -> new TopicPartition(record.topic() + "-dlt", -1));
+    }
+}
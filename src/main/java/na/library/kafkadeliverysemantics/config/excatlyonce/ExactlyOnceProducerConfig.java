@@ -1,6 +1,9 @@
 package na.library.kafkadeliverysemantics.config.excatlyonce;
 
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -8,9 +11,12 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.kafka.transaction.KafkaTransactionManager;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Configuration
@@ -29,6 +35,10 @@ public class ExactlyOnceProducerConfig {
     @Value("${spring.kafka.client-id}")
     private String clientId;
 
+    // Part of the relay's transactional.id, so relay replicas sharing a client id do not fence each other
+    @Value("${outbox.relay.instance-id:${random.uuid}}")
+    private String relayInstanceId;
+
     @Bean
     public ProducerFactory<String, Object> exactlyOnceProducerFactory() {
         Map<String, Object> configProps = new HashMap<>();
@@ -54,6 +64,34 @@ public class ExactlyOnceProducerConfig {
         return template;
     }
 
+    // Producer for the outbox relay: byte[] values (pass-through outbox payloads) are written as-is,
+    // anything else goes through JsonSerializer like the other exactly-once producers
+    @Bean
+    public ProducerFactory<String, Object> outboxRelayProducerFactory() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+
+        // Exactly-once specific configurations
+        configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        configProps.put(ProducerConfig.ACKS_CONFIG, "all");
+        configProps.put(ProducerConfig.RETRIES_CONFIG, Integer.MAX_VALUE);
+        configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+
+        Map<Class<?>, Serializer<?>> valueSerializers = new LinkedHashMap<>();
+        valueSerializers.put(byte[].class, new ByteArraySerializer());
+        valueSerializers.put(Object.class, new JsonSerializer<>());
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(configProps,
+                new StringSerializer(), new DelegatingByTypeSerializer(valueSerializers, true));
+        factory.setTransactionIdPrefix(clientId + "-tx-outbox-" + relayInstanceId + "-");
+
+        return factory;
+    }
+
+    @Bean("outboxRelayKafkaTemplate")
+    public KafkaTemplate<String, Object> outboxRelayKafkaTemplate() {
+        return new KafkaTemplate<>(outboxRelayProducerFactory());
+    }
+
     //Define a KafkaTransactionManager bean:    @Transactional("kafkaTransactionManager")
     @Bean("kafkaTransactionManager")
     public KafkaTransactionManager<String, Object> kafkaTransactionManager() {
@@ -0,0 +1,31 @@
+package na.library.kafkadeliverysemantics.controller;
+
+import lombok.RequiredArgsConstructor;
+import na.library.kafkadeliverysemantics.entity.QuarantinedRecord;
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/quarantine")
+@RequiredArgsConstructor
+public class QuarantineController {
+
+    private final QuarantineService quarantineService;
+
+    // Records not replayed yet, newest first; values are returned base64-encoded
+    @GetMapping
+    public ResponseEntity<List<QuarantinedRecord>> listQuarantined(@RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(quarantineService.findPending(limit));
+    }
+
+    @PostMapping("/{id}/replay")
+    public ResponseEntity<String> replay(@PathVariable Long id) {
+        if (!quarantineService.replay(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok("Quarantined record " + id + " replayed to its original topic");
+    }
+}
@@ -0,0 +1,27 @@
+package na.library.kafkadeliverysemantics.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last sequence number handed out to an outbox event of one aggregate.
+ */
+@Entity
+@Table(name = "aggregate_sequences")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregateSequence {
+
+    @Id
+    @Column(name = "aggregate_id", nullable = false)
+    private String aggregateId;
+
+    @Column(name = "last_sequence", nullable = false)
+    private long lastSequence;
+}
@@ -8,7 +8,13 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "outbox_events")
+@Table(name = "outbox_events",
+        indexes = {
+                @Index(name = "idx_outbox_events_unprocessed", columnList = "processed, created_at, id"),
+                @Index(name = "idx_outbox_events_owner", columnList = "owner, processed"),
+                @Index(name = "idx_outbox_events_aggregate", columnList = "aggregate_id, processed"),
+                @Index(name = "idx_outbox_events_retention", columnList = "processed, processed_at")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,14 +33,36 @@ public class OutboxEvent {
     @Column(name = "event_type", nullable = false)
     private String eventType;
     
-    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    // Plain JSON payload; null when the payload is stored compressed in payloadData
+    @Column(name = "payload", columnDefinition = "TEXT")
     private String payload;
+
+    // Codec of payloadData, e.g. "gzip"; null for rows holding plain JSON in payload
+    @Column(name = "payload_codec", length = 16)
+    private String payloadCodec;
+
+    @Column(name = "payload_data", length = 1_000_000)
+    private byte[] payloadData;
     
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
     
     @Column(name = "processed", nullable = false)
     private boolean processed;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    // Instance currently holding the lease on this row: a claim-based relay or the publish-on-commit fast path
+    @Column(name = "owner")
+    private String owner;
+
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    // Monotonic per aggregate, assigned when the event is written; null for rows written before it existed
+    @Column(name = "aggregate_sequence")
+    private Long sequence;
     
     public OutboxEvent(String aggregateId, String aggregateType, String eventType, String payload) {
         this.aggregateId = aggregateId;
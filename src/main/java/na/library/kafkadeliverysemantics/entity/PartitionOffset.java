@@ -0,0 +1,35 @@
+package na.library.kafkadeliverysemantics.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Next offset to apply for one topic-partition, written in the same transaction as the
+ * business changes so the database alone decides what has been consumed.
+ */
+@Entity
+@Table(name = "partition_offsets")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartitionOffset {
+
+    // "topic-partition", as TopicPartition.toString() renders it
+    @Id
+    @Column(name = "topic_partition", nullable = false)
+    private String topicPartition;
+
+    @Column(name = "topic", nullable = false)
+    private String topic;
+
+    @Column(name = "partition_number", nullable = false)
+    private int partition;
+
+    @Column(name = "next_offset", nullable = false)
+    private long nextOffset;
+}
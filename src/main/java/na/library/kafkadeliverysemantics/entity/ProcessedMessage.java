@@ -3,17 +3,25 @@ package na.library.kafkadeliverysemantics.entity;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
-import lombok.AllArgsConstructor;
+import jakarta.persistence.Transient;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
 
 @Entity
-@Table(name = "processed_messages")
+@Table(name = "processed_messages", indexes = {
+        // Range scans by the expiry job
+        @Index(name = "idx_processed_messages_timestamp", columnList = "processed_timestamp"),
+        // Warm-up of one partition's recent ids after a rebalance
+        @Index(name = "idx_processed_messages_partition", columnList = "topic_partition, processed_timestamp")
+})
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
-public class ProcessedMessage {
+public class ProcessedMessage implements Persistable<String> {
     
     @Id
     @Column(name = "message_id", nullable = false, unique = true)
@@ -21,4 +29,38 @@ public class ProcessedMessage {
     
     @Column(name = "processed_timestamp", nullable = false)
     private long processedTimestamp;
+
+    // "topic-partition" the message was consumed from; null for rows written before it was recorded
+    @Column(name = "topic_partition")
+    private String topicPartition;
+
+    // Rows are only ever inserted, so save() can persist without the SELECT that merge() would issue
+    @Transient
+    private boolean isNew = true;
+
+    public ProcessedMessage(String messageId, long processedTimestamp) {
+        this.messageId = messageId;
+        this.processedTimestamp = processedTimestamp;
+    }
+
+    public ProcessedMessage(String messageId, long processedTimestamp, String topicPartition) {
+        this(messageId, processedTimestamp);
+        this.topicPartition = topicPartition;
+    }
+
+    @Override
+    public String getId() {
+        return messageId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package na.library.kafkadeliverysemantics.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A record whose value could not be deserialized, kept as raw bytes so it can be inspected and replayed.
+ */
+@Entity
+@Table(name = "quarantined_records",
+        indexes = @Index(name = "idx_quarantined_records_replayed", columnList = "replayed, id"),
+        // A record is quarantined once, however often it is redelivered
+        uniqueConstraints = @UniqueConstraint(name = "uk_quarantined_records_position",
+                columnNames = {"topic", "partition_number", "record_offset"}))
+@Data
+@NoArgsConstructor
+public class QuarantinedRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "topic", nullable = false)
+    private String topic;
+
+    @Column(name = "partition_number", nullable = false)
+    private int partition;
+
+    @Column(name = "record_offset", nullable = false)
+    private long offset;
+
+    @Column(name = "record_key")
+    private String key;
+
+    @Column(name = "record_value", length = 1_000_000)
+    private byte[] value;
+
+    @Column(name = "exception_class", nullable = false)
+    private String exception;
+
+    @Column(name = "exception_message", length = 2000)
+    private String reason;
+
+    @Column(name = "quarantined_at", nullable = false)
+    private LocalDateTime quarantinedAt;
+
+    @Column(name = "replayed", nullable = false)
+    private boolean replayed;
+
+    @Column(name = "replayed_at")
+    private LocalDateTime replayedAt;
+}
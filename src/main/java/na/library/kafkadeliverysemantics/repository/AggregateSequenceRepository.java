@@ -0,0 +1,20 @@
+package na.library.kafkadeliverysemantics.repository;
+
+import jakarta.persistence.LockModeType;
+import na.library.kafkadeliverysemantics.entity.AggregateSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface AggregateSequenceRepository extends JpaRepository<AggregateSequence, String> {
+
+    // Row lock serializes concurrent writers of the same aggregate until their transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM AggregateSequence s WHERE s.aggregateId = :aggregateId")
+    Optional<AggregateSequence> findForUpdate(@Param("aggregateId") String aggregateId);
+}
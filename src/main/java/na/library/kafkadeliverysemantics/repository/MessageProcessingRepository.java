@@ -1,10 +1,46 @@
 package na.library.kafkadeliverysemantics.repository;
 
 import na.library.kafkadeliverysemantics.entity.ProcessedMessage;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface MessageProcessingRepository extends JpaRepository<ProcessedMessage, String> {
     boolean existsByMessageId(String messageId);
+
+    @Query("SELECT p.messageId FROM ProcessedMessage p WHERE p.messageId IN :messageIds")
+    List<String> findExistingMessageIds(@Param("messageIds") Collection<String> messageIds);
+
+    // Single-statement insert-if-absent; returns 0 when the id is already recorded
+    @Modifying
+    @Query(value = "INSERT INTO processed_messages (message_id, processed_timestamp, topic_partition) " +
+            "SELECT :messageId, :processedTimestamp, :topicPartition " +
+            "WHERE NOT EXISTS (SELECT 1 FROM processed_messages WHERE message_id = :messageId)", nativeQuery = true)
+    int insertIfAbsent(@Param("messageId") String messageId, @Param("processedTimestamp") long processedTimestamp,
+                       @Param("topicPartition") String topicPartition);
+
+    // PostgreSQL variant that also resolves concurrent inserts of the same id without an error
+    @Modifying
+    @Query(value = "INSERT INTO processed_messages (message_id, processed_timestamp, topic_partition) " +
+            "VALUES (:messageId, :processedTimestamp, :topicPartition) ON CONFLICT (message_id) DO NOTHING", nativeQuery = true)
+    int insertOnConflictDoNothing(@Param("messageId") String messageId, @Param("processedTimestamp") long processedTimestamp,
+                                  @Param("topicPartition") String topicPartition);
+
+    // Most recent ids of one partition, used to warm dedup state after a rebalance
+    @Query("SELECT p.messageId FROM ProcessedMessage p WHERE p.topicPartition = :topicPartition ORDER BY p.processedTimestamp DESC")
+    List<String> findRecentMessageIds(@Param("topicPartition") String topicPartition, Limit limit);
+
+    @Query("SELECT p.messageId FROM ProcessedMessage p WHERE p.processedTimestamp < :cutoff ORDER BY p.processedTimestamp ASC")
+    List<String> findExpiredMessageIds(@Param("cutoff") long cutoff, Limit limit);
+
+    // Keyset pages of ids, used to rebuild in-memory filters without loading the whole table
+    @Query("SELECT p.messageId FROM ProcessedMessage p WHERE p.messageId > :after ORDER BY p.messageId ASC")
+    List<String> findMessageIdsAfter(@Param("after") String after, Limit limit);
 }
\ No newline at end of file
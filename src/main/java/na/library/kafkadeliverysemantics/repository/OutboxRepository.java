@@ -1,15 +1,94 @@
 package na.library.kafkadeliverysemantics.repository;
 
 import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface OutboxRepository extends JpaRepository<OutboxEvent, Long> {
     
-    @Query("SELECT o FROM OutboxEvent o WHERE o.processed = false ORDER BY o.createdAt ASC")
-    List<OutboxEvent> findUnprocessedEvents();
-}
\ No newline at end of file
+    // Keyset pagination over (createdAt, id); backed by the idx_outbox_events_unprocessed index
+    @Query("SELECT o FROM OutboxEvent o WHERE o.processed = false ORDER BY o.createdAt ASC, o.id ASC")
+    List<OutboxEvent> findUnprocessedEvents(Limit limit);
+
+    @Query("SELECT o FROM OutboxEvent o WHERE o.processed = false " +
+            "AND (o.createdAt > :createdAt OR (o.createdAt = :createdAt AND o.id > :id)) " +
+            "ORDER BY o.createdAt ASC, o.id ASC")
+    List<OutboxEvent> findUnprocessedEventsAfter(@Param("createdAt") LocalDateTime createdAt,
+                                                 @Param("id") Long id,
+                                                 Limit limit);
+
+    // Claim-based relay: candidates are aggregates with at least one unprocessed, unleased row
+    @Query("SELECT o.aggregateId FROM OutboxEvent o WHERE o.processed = false " +
+            "AND (o.leaseUntil IS NULL OR o.leaseUntil < :now) " +
+            "ORDER BY o.createdAt ASC, o.id ASC")
+    List<String> findClaimableAggregateIds(@Param("now") LocalDateTime now, Limit limit);
+
+    // Same as findClaimableAggregateIds, but skips rows another relay is claiming right now.
+    // Only for databases supporting FOR UPDATE SKIP LOCKED (PostgreSQL, MySQL 8, Oracle).
+    @Query(value = "SELECT aggregate_id FROM outbox_events WHERE processed = false " +
+            "AND (lease_until IS NULL OR lease_until < :now) " +
+            "ORDER BY created_at, id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<String> lockClaimableAggregateIds(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    // Leases every pending row of the given aggregates, unless another owner still holds a live lease
+    // on one of them, so all pending events of an aggregate are relayed by a single instance
+    @Modifying
+    @Transactional("transactionManager")
+    @Query("UPDATE OutboxEvent o SET o.owner = :owner, o.leaseUntil = :leaseUntil " +
+            "WHERE o.aggregateId IN :aggregateIds AND o.processed = false " +
+            "AND (o.leaseUntil IS NULL OR o.leaseUntil < :now) " +
+            "AND NOT EXISTS (SELECT p.id FROM OutboxEvent p WHERE p.aggregateId = o.aggregateId " +
+            "AND p.processed = false AND p.owner <> :owner AND p.leaseUntil >= :now)")
+    int claimAggregates(@Param("aggregateIds") Collection<String> aggregateIds,
+                        @Param("owner") String owner,
+                        @Param("leaseUntil") LocalDateTime leaseUntil,
+                        @Param("now") LocalDateTime now);
+
+    @Query("SELECT o FROM OutboxEvent o WHERE o.owner = :owner AND o.processed = false " +
+            "AND o.leaseUntil >= :now ORDER BY o.createdAt ASC, o.id ASC")
+    List<OutboxEvent> findClaimedEvents(@Param("owner") String owner, @Param("now") LocalDateTime now, Limit limit);
+
+    // Leases a single row for the publish-on-commit fast path; 0 means someone else already holds it
+    @Modifying
+    @Transactional("transactionManager")
+    @Query("UPDATE OutboxEvent o SET o.owner = :owner, o.leaseUntil = :leaseUntil " +
+            "WHERE o.id = :id AND o.processed = false AND (o.leaseUntil IS NULL OR o.leaseUntil < :now)")
+    int claimEvent(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("leaseUntil") LocalDateTime leaseUntil,
+                   @Param("now") LocalDateTime now);
+
+    // Drops the fast path's lease after a failed send, so the sweep can relay the row right away
+    @Modifying
+    @Transactional("transactionManager")
+    @Query("UPDATE OutboxEvent o SET o.owner = NULL, o.leaseUntil = NULL " +
+            "WHERE o.id = :id AND o.owner = :owner AND o.processed = false")
+    int releaseEvent(@Param("id") Long id, @Param("owner") String owner);
+
+    long countByProcessedFalse();
+
+    boolean existsByAggregateIdAndProcessedFalseAndIdLessThan(String aggregateId, Long id);
+
+    // Only rows owned by the caller, never leased, or whose lease has expired are marked; a relay whose lease
+    // expired and was reclaimed by another relay updates fewer rows than it asked for
+    @Modifying
+    @Transactional("transactionManager")
+    @Query("UPDATE OutboxEvent o SET o.processed = true, o.processedAt = LOCAL DATETIME " +
+            "WHERE o.id IN :ids AND o.processed = false " +
+            "AND (o.owner IS NULL OR o.owner = :owner OR o.leaseUntil < :now)")
+    int markAsProcessed(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+    // Retention: processed rows past the window, oldest first, one chunk at a time
+    @Query("SELECT o.id FROM OutboxEvent o WHERE o.processed = true AND o.processedAt < :cutoff ORDER BY o.processedAt ASC")
+    List<Long> findPurgeableIds(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+}
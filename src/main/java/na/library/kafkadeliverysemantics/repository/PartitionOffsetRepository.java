@@ -0,0 +1,9 @@
+package na.library.kafkadeliverysemantics.repository;
+
+import na.library.kafkadeliverysemantics.entity.PartitionOffset;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PartitionOffsetRepository extends JpaRepository<PartitionOffset, String> {
+}
@@ -0,0 +1,16 @@
+package na.library.kafkadeliverysemantics.repository;
+
+import na.library.kafkadeliverysemantics.entity.QuarantinedRecord;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface QuarantinedRecordRepository extends JpaRepository<QuarantinedRecord, Long> {
+
+    List<QuarantinedRecord> findByReplayedFalseOrderByIdDesc(Limit limit);
+
+    boolean existsByTopicAndPartitionAndOffset(String topic, int partition, long offset);
+}
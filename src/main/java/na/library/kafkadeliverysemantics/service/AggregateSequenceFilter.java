@@ -0,0 +1,79 @@
+package na.library.kafkadeliverysemantics.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consumer-side dedup for outbox events based on the per-aggregate sequence header.
+ * Keeps only the highest applied sequence per topic and aggregate and discards records at or below it,
+ * which replaces a set of every event id with one number per aggregate and topic.
+ * The watermark is kept per topic because events of one aggregate are spread over the created, updated
+ * and deleted topics, and Kafka orders records only within a partition: an update may well arrive before
+ * the create it follows. Within one topic the sequence only grows, but skips the events sent to the
+ * other topics, so a jump in the sequence is expected and not reported.
+ * The watermark only advances once the listener has processed a record successfully,
+ * so a failed record is not filtered out when it is redelivered.
+ * Records without the header (older events) always pass.
+ */
+@Component
+@Profile("outbox")
+@Slf4j
+public class AggregateSequenceFilter implements RecordFilterStrategy<String, Object>, RecordInterceptor<String, Object> {
+
+    private final Cache<TopicAggregate, Long> watermarks;
+    private final Counter duplicates;
+
+    public AggregateSequenceFilter(MeterRegistry meterRegistry,
+                                   @Value("${consumer.outbox.watermarks.capacity:1000000}") long capacity) {
+        // Bounded; an evicted aggregate falls back to at-least-once until its next event
+        this.watermarks = Caffeine.newBuilder().maximumSize(capacity).build();
+        this.duplicates = meterRegistry.counter("outbox.consumer.sequence", "result", "duplicate");
+    }
+
+    @Override
+    public boolean filter(ConsumerRecord<String, Object> record) {
+        Long sequence = sequenceOf(record);
+        if (sequence == null || record.key() == null) {
+            return false;
+        }
+        Long watermark = watermarks.getIfPresent(new TopicAggregate(record.topic(), record.key()));
+        if (watermark == null || sequence > watermark) {
+            return false;
+        }
+        log.info("Discarding replayed event {} of aggregate {} on {} (already applied up to {})",
+                sequence, record.key(), record.topic(), watermark);
+        duplicates.increment();
+        return true;
+    }
+
+    @Override
+    public ConsumerRecord<String, Object> intercept(ConsumerRecord<String, Object> record, Consumer<String, Object> consumer) {
+        return record;
+    }
+
+    @Override
+    public void success(ConsumerRecord<String, Object> record, Consumer<String, Object> consumer) {
+        Long sequence = sequenceOf(record);
+        if (sequence != null && record.key() != null) {
+            watermarks.asMap().merge(new TopicAggregate(record.topic(), record.key()), sequence, Math::max);
+        }
+    }
+
+    private static Long sequenceOf(ConsumerRecord<String, Object> record) {
+        String sequence = KafkaRecordHeaders.lastString(record.headers(), KafkaRecordHeaders.AGGREGATE_SEQUENCE);
+        return sequence == null ? null : Long.valueOf(sequence);
+    }
+
+    private record TopicAggregate(String topic, String aggregateId) {
+    }
+}
@@ -0,0 +1,33 @@
+package na.library.kafkadeliverysemantics.service;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Kafka header names written by the producers and the outbox relay.
+ */
+public final class KafkaRecordHeaders {
+
+    // Id of the message, as UTF-8; lets consumers deduplicate without parsing the payload
+    public static final String MESSAGE_ID = "message-id";
+
+    // Per-aggregate sequence number of the event, as a decimal string
+    public static final String AGGREGATE_SEQUENCE = "aggregate-sequence";
+
+    // Storage codec of a compressed outbox payload (e.g. "gzip"); absent for plain JSON
+    public static final String CONTENT_ENCODING = "content-encoding";
+
+    private KafkaRecordHeaders() {
+    }
+
+    public static void addString(Headers headers, String name, String value) {
+        headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String lastString(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+package na.library.kafkadeliverysemantics.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Leases batches of outbox rows to a single relay instance, so several instances
+ * can relay the same outbox table without publishing the same event twice.
+ * Leases that expire (e.g. the owning instance crashed) are claimed again by any instance.
+ */
+@Service
+@Profile("exactly-once")
+@RequiredArgsConstructor
+@Slf4j
+public class OutboxClaimService {
+
+    private final OutboxRepository outboxRepository;
+    private final Clock clock;
+
+    // Pick candidates with SELECT ... FOR UPDATE SKIP LOCKED; leave off for H2
+    @Value("${outbox.relay.claim.skip-locked:false}")
+    private boolean skipLocked;
+
+    /**
+     * Claims up to {@code batchSize} aggregates for {@code owner} and returns the oldest rows
+     * the owner currently holds, including rows still leased from an earlier, failed attempt.
+     *
+     * @param owner Unique id of the relay instance
+     * @param batchSize Maximum number of events to return
+     * @param leaseDuration How long the claimed rows stay reserved for the owner
+     * @return Claimed events in (createdAt, id) order
+     */
+    @Transactional("transactionManager")
+    public List<OutboxEvent> claimBatch(String owner, int batchSize, Duration leaseDuration) {
+        LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MILLIS);
+
+        List<String> candidates = skipLocked
+                ? outboxRepository.lockClaimableAggregateIds(now, batchSize)
+                : outboxRepository.findClaimableAggregateIds(now, Limit.of(batchSize));
+
+        if (!candidates.isEmpty()) {
+            Set<String> aggregateIds = new LinkedHashSet<>(candidates);
+            int claimed = outboxRepository.claimAggregates(aggregateIds, owner, now.plus(leaseDuration), now);
+            log.debug("Relay {} claimed {} outbox rows across {} aggregates", owner, claimed, aggregateIds.size());
+        }
+
+        return outboxRepository.findClaimedEvents(owner, now, Limit.of(batchSize));
+    }
+}
@@ -0,0 +1,22 @@
+package na.library.kafkadeliverysemantics.service;
+
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+@Service
+@Profile("outbox")
+@Slf4j
+public class OutboxEventConsumerService {
+
+    @KafkaListener(topics = {"message-created-topic", "message-updated-topic", "message-deleted-topic"},
+            groupId = "${consumer.outbox.group.id}", containerFactory = "outboxEventContainerFactory")
+    public void consume(ConsumerRecord<String, Message> record) {
+        log.info("Received {} event for aggregate {}: {}", record.topic(), record.key(), record.value());
+
+        // Your actual business logic goes here
+    }
+}
@@ -0,0 +1,297 @@
+package na.library.kafkadeliverysemantics.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Turns outbox events into Kafka records and marks them as processed once Kafka has acknowledged them.
+ * Shared by the scheduled relay and the publish-on-commit fast path.
+ */
+@Component
+@Profile("exactly-once")
+@Slf4j
+public class OutboxEventPublisher {
+
+    private static final int SEND_TIMEOUT_SECONDS = 10;
+    private static final String MESSAGE_UPDATED = "MESSAGE_UPDATED";
+    private static final String MESSAGE_DELETED = "MESSAGE_DELETED";
+    private static final byte[] MESSAGE_TYPE_ID = Message.class.getName().getBytes(StandardCharsets.UTF_8);
+
+    private final OutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate dbTransactionTemplate;
+    private final Clock clock;
+
+    // Send the stored JSON payload as raw bytes instead of decoding it into a Message and encoding it again
+    @Value("${outbox.relay.pass-through:false}")
+    private boolean passThrough;
+
+    // Pass-through only: send compressed payloads without decompressing them, for consumers that
+    // understand the content-encoding header (OutboxPayloadDeserializer). Otherwise they are decompressed to plain JSON first.
+    @Value("${outbox.relay.ship-compressed:false}")
+    private boolean shipCompressed;
+
+    @Value("${outbox.payload.codec:none}")
+    private String payloadCodec;
+
+    // Within a batch, publish only the newest pending MESSAGE_UPDATED per aggregate
+    @Value("${outbox.relay.coalesce-updates:false}")
+    private boolean coalesceUpdates;
+
+    private Timer sendTimer;
+    private Counter supersededEvents;
+
+    public OutboxEventPublisher(OutboxRepository outboxRepository, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                TransactionTemplate dbTransactionTemplate, Clock clock) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.dbTransactionTemplate = dbTransactionTemplate;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        sendTimer = Timer.builder("outbox.relay.send")
+                .description("Time to build, serialize and enqueue one outbox record")
+                .tag("mode", passThrough ? "pass-through" : "json")
+                .tag("codec", OutboxPayloadCodec.fromMarker(payloadCodec).name())
+                .register(meterRegistry);
+        supersededEvents = meterRegistry.counter("outbox.relay.superseded");
+    }
+
+    /**
+     * Sends a single event within the caller's Kafka transaction, waits for the ack
+     * and marks the event as processed.
+     * Any failure is rethrown so the surrounding transaction rolls back.
+     *
+     * @param event The outbox event to publish
+     * @param owner Relay instance holding the lease on the event, or null for unleased rows
+     * @param operations Kafka operations bound to the current transaction
+     */
+    public void publishInTransaction(OutboxEvent event, String owner, KafkaOperations<String, Object> operations) {
+        if (event == null || !OutboxPayloadCodec.hasPayload(event)) {
+            log.error("Invalid event received: {}", event);
+            return;
+        }
+
+        try {
+            // Send the record using the operations template that's already in a transaction
+            CompletableFuture<SendResult<String, Object>> future = send(event, operations);
+
+            try {
+                // Wait for the result with a timeout to avoid blocking indefinitely
+                SendResult<String, Object> result = future.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                // Log the result of the Kafka send operation
+                log.info("Relayed message to Kafka: {}, offset: {}", event.getAggregateId(), result.getRecordMetadata().offset());
+
+                // After successful message send, mark the event as processed in the database
+                markAsProcessed(List.of(event.getId()), owner);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Thread interrupted while relaying message: {}", event.getAggregateId(), e);
+                throw new RuntimeException("Thread interrupted while relaying message", e);
+            } catch (ExecutionException e) {
+                log.error("Error executing Kafka send for message: {}", event.getAggregateId(), e);
+                throw new RuntimeException("Failed to send message to Kafka", e.getCause());
+            } catch (TimeoutException e) {
+                log.error("Timeout while sending message to Kafka: {}", event.getAggregateId(), e);
+                throw new RuntimeException("Timeout sending message to Kafka", e);
+            }
+
+        } catch (Exception e) {
+            // In case of failure (Kafka or JPA), the transaction will roll back
+            log.error("Error processing outbox event: {}", event.getId(), e);
+            throw new RuntimeException("Failed to relay message", e);
+        }
+    }
+
+    /**
+     * Sends the whole batch without waiting on each record, then flushes once, waits for all acks
+     * and marks the batch as processed with a single update.
+     * Any failure (Kafka or JPA) aborts the Kafka transaction for the whole batch.
+     * With update coalescing on, superseded MESSAGE_UPDATED events are not sent but still marked as processed.
+     *
+     * @param batch Events to publish, in relay order
+     * @param owner Relay instance holding the lease on the events, or null for unleased rows
+     * @param operations Kafka operations bound to the current transaction
+     * @return Number of events handled, sent or superseded
+     */
+    public int publishBatchInTransaction(List<OutboxEvent> batch, String owner, KafkaOperations<String, Object> operations) {
+        List<CompletableFuture<SendResult<String, Object>>> futures = new ArrayList<>(batch.size());
+        List<Long> relayedIds = new ArrayList<>(batch.size());
+        List<Long> supersededIds = new ArrayList<>();
+
+        for (OutboxEvent event : coalesceUpdates ? coalesce(batch, supersededIds) : batch) {
+            if (!OutboxPayloadCodec.hasPayload(event)) {
+                log.error("Invalid event received: {}", event);
+                continue;
+            }
+            futures.add(send(event, operations));
+            relayedIds.add(event.getId());
+        }
+
+        if (relayedIds.isEmpty()) {
+            return 0;
+        }
+
+        operations.flush();
+        awaitSends(futures);
+
+        // Mark the whole batch as processed with a single UPDATE ... WHERE id IN (...)
+        relayedIds.addAll(supersededIds);
+        markAsProcessed(relayedIds, owner);
+        if (!supersededIds.isEmpty()) {
+            supersededEvents.increment(supersededIds.size());
+            log.info("Coalesced {} superseded update events", supersededIds.size());
+        }
+        return relayedIds.size();
+    }
+
+    // All or nothing: if another relay has taken over any of the rows, nothing is marked and the exception
+    // aborts the caller's Kafka transaction, so the records sent under the lost lease are never committed.
+    // Rows left behind with an expired lease (e.g. by a crashed fast path) can be marked by anyone.
+    private void markAsProcessed(List<Long> ids, String owner) {
+        LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MILLIS);
+        dbTransactionTemplate.executeWithoutResult(status -> {
+            int marked = outboxRepository.markAsProcessed(ids, owner, now);
+            if (marked != ids.size()) {
+                throw new IllegalStateException("Relay " + owner + " lost the lease on " + (ids.size() - marked)
+                        + " of " + ids.size() + " outbox events");
+            }
+        });
+    }
+
+    // Keeps only the newest MESSAGE_UPDATED per aggregate; an update followed by a later update
+    // or a MESSAGE_DELETED of the same aggregate is moot. Other events and the batch order are kept.
+    private List<OutboxEvent> coalesce(List<OutboxEvent> batch, List<Long> supersededIds) {
+        Set<String> overwritten = new HashSet<>();
+        Deque<OutboxEvent> kept = new ArrayDeque<>(batch.size());
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            OutboxEvent event = batch.get(i);
+            boolean update = MESSAGE_UPDATED.equals(event.getEventType());
+            if (update && overwritten.contains(event.getAggregateId())) {
+                supersededIds.add(event.getId());
+                continue;
+            }
+            if (update || MESSAGE_DELETED.equals(event.getEventType())) {
+                overwritten.add(event.getAggregateId());
+            }
+            kept.addFirst(event);
+        }
+        return List.copyOf(kept);
+    }
+
+    // Record building and serialization run on the caller's thread, so this timer is the relay's CPU cost per event
+    private CompletableFuture<SendResult<String, Object>> send(OutboxEvent event, KafkaOperations<String, Object> operations) {
+        return sendTimer.record(() -> operations.send(toRecord(event)));
+    }
+
+    // The key is the aggregate id so all events of an aggregate land on the same partition
+    private ProducerRecord<String, Object> toRecord(OutboxEvent event) {
+        ProducerRecord<String, Object> record = buildRecord(event);
+        // The aggregate id is shared by all events of a message, so the event itself is identified by its outbox id.
+        // This is deliberately not the Message id the exactly-once consumers dedup on: that id would mark every
+        // later event of the message as a duplicate, so relayed records never take the pre-parse skip.
+        KafkaRecordHeaders.addString(record.headers(), KafkaRecordHeaders.MESSAGE_ID, "outbox-" + event.getId());
+        if (event.getSequence() != null) {
+            KafkaRecordHeaders.addString(record.headers(), KafkaRecordHeaders.AGGREGATE_SEQUENCE,
+                    Long.toString(event.getSequence()));
+        }
+        return record;
+    }
+
+    private ProducerRecord<String, Object> buildRecord(OutboxEvent event) {
+        String topic = determineTopicFromEventType(event.getEventType());
+        if (!passThrough) {
+            return new ProducerRecord<>(topic, event.getAggregateId(), readPayload(event));
+        }
+
+        if (shipCompressed && event.getPayloadCodec() != null) {
+            // Stored compressed bytes go out untouched with a content-encoding header and no type header,
+            // since the value is not JSON; OutboxPayloadDeserializer decodes them on the consumer side
+            ProducerRecord<String, Object> record = new ProducerRecord<>(topic, event.getAggregateId(), event.getPayloadData());
+            KafkaRecordHeaders.addString(record.headers(), KafkaRecordHeaders.CONTENT_ENCODING, event.getPayloadCodec());
+            return record;
+        }
+
+        // The payload is already JSON: ship its bytes as-is, with the type header JsonSerializer
+        // would have added so consumers using JsonDeserializer keep working
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, event.getAggregateId(),
+                OutboxPayloadCodec.jsonOf(event).getBytes(StandardCharsets.UTF_8));
+        record.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, MESSAGE_TYPE_ID);
+        return record;
+    }
+
+    private Message readPayload(OutboxEvent event) {
+        try {
+            return objectMapper.readValue(OutboxPayloadCodec.jsonOf(event), Message.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to deserialize payload of outbox event: " + event.getId(), e);
+        }
+    }
+
+    private void awaitSends(List<CompletableFuture<SendResult<String, Object>>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread interrupted while relaying batch", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to send batch to Kafka", e.getCause());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Timeout sending batch to Kafka", e);
+        }
+    }
+
+    // This helper method determines the Kafka topic based on the event type
+    private String determineTopicFromEventType(String eventType) {
+        if (eventType == null) {
+            log.warn("Event type is null, using default topic");
+            return "default-topic";
+        }
+
+        // Map event types to Kafka topics
+        return switch (eventType) {
+            case "MESSAGE_CREATED" -> "message-created-topic";
+            case "MESSAGE_UPDATED" -> "message-updated-topic";
+            case "MESSAGE_DELETED" -> "message-deleted-topic";
+            default -> "default-topic";
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package na.library.kafkadeliverysemantics.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.config.WorkerThreads;
+import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publish-on-commit fast path for the outbox.
+ * OutboxService hands every committed event to {@link #publishAsync(OutboxEvent)}, which publishes it
+ * right away instead of waiting for the next relay run. The scheduled relay stays the durable fallback:
+ * anything this path drops, fails to send or loses in a crash is still in the table and gets swept later.
+ */
+@Component
+@Profile("exactly-once")
+@ConditionalOnProperty(name = "outbox.fast-path.enabled", havingValue = "true")
+@Slf4j
+public class OutboxFastPathPublisher {
+
+    private final OutboxRepository outboxRepository;
+    private final OutboxEventPublisher eventPublisher;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    // Same time source as OutboxClaimService, so lease expiry is judged the same way everywhere
+    private final Clock clock;
+
+    // Events of one aggregate always go to the same single-threaded lane, so they are sent in commit order
+    @Value("${outbox.fast-path.threads:4}")
+    private int threads;
+
+    // Events beyond this many queued per lane are left to the scheduled relay
+    @Value("${outbox.fast-path.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // Events still queued after this long belong to the relay's sweep
+    @Value("${outbox.fast-path.sweep-delay:30s}")
+    private Duration sweepDelay;
+
+    @Value("${outbox.relay.claim.lease-duration:60s}")
+    private Duration leaseDuration;
+
+    @Value("${outbox.relay.instance-id:${random.uuid}}")
+    private String instanceId;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final List<ThreadPoolExecutor> lanes = new ArrayList<>();
+
+    public OutboxFastPathPublisher(OutboxRepository outboxRepository,
+                                   OutboxEventPublisher eventPublisher,
+                                   @Qualifier("outboxRelayKafkaTemplate") KafkaTemplate<String, Object> kafkaTemplate,
+                                   Clock clock) {
+        this.outboxRepository = outboxRepository;
+        this.eventPublisher = eventPublisher;
+        this.kafkaTemplate = kafkaTemplate;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    void startLanes() {
+        ThreadFactory threadFactory = WorkerThreads.factory("outbox-fast-path-", virtualThreads);
+        for (int lane = 0; lane < threads; lane++) {
+            lanes.add(new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), threadFactory));
+        }
+    }
+
+    @PreDestroy
+    void stopLanes() {
+        lanes.forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    /**
+     * Queues a committed outbox event for immediate publishing.
+     * Never throws: if the event cannot be queued, the scheduled relay picks it up.
+     *
+     * @param event The committed outbox event
+     */
+    public void publishAsync(OutboxEvent event) {
+        ThreadPoolExecutor lane = lanes.get(Math.floorMod(Objects.hashCode(event.getAggregateId()), lanes.size()));
+        try {
+            lane.execute(() -> publish(event));
+        } catch (RejectedExecutionException e) {
+            log.warn("Fast path queue full, leaving outbox event {} to the scheduled relay", event.getId());
+        }
+    }
+
+    private void publish(OutboxEvent event) {
+        boolean leased = false;
+        try {
+            // Queued for so long that the sweep may already be relaying it; leave it there
+            if (event.getCreatedAt().isBefore(LocalDateTime.now(clock).minus(sweepDelay))) {
+                log.debug("Outbox event {} is stale, leaving it to the scheduled relay", event.getId());
+                return;
+            }
+
+            // An older event of this aggregate is still pending (e.g. after a failed send):
+            // publishing this one now would overtake it, so leave both to the relay
+            if (outboxRepository.existsByAggregateIdAndProcessedFalseAndIdLessThan(event.getAggregateId(), event.getId())) {
+                log.debug("Outbox event {} waits behind an older event of aggregate {}", event.getId(), event.getAggregateId());
+                return;
+            }
+
+            // Lease the row so a claim-based relay does not publish it at the same time
+            LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MILLIS);
+            if (outboxRepository.claimEvent(event.getId(), instanceId, now.plus(leaseDuration), now) == 0) {
+                log.debug("Outbox event {} already claimed by a relay", event.getId());
+                return;
+            }
+            leased = true;
+
+            kafkaTemplate.executeInTransaction(operations -> {
+                eventPublisher.publishInTransaction(event, instanceId, operations);
+                return null;
+            });
+            log.debug("Fast path published outbox event {} {} ms after commit", event.getId(),
+                    ChronoUnit.MILLIS.between(event.getCreatedAt(), LocalDateTime.now(clock)));
+        } catch (Exception e) {
+            log.warn("Fast path failed for outbox event {}, the scheduled relay will retry it", event.getId(), e);
+            if (leased) {
+                release(event);
+            }
+        }
+    }
+
+    // Without this the row, and every later event of its aggregate, would wait for the lease to run out
+    private void release(OutboxEvent event) {
+        try {
+            outboxRepository.releaseEvent(event.getId(), instanceId);
+        } catch (Exception e) {
+            log.warn("Failed to release the lease on outbox event {}, the relay takes it over once it expires",
+                    event.getId(), e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package na.library.kafkadeliverysemantics.service;
+
+import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Storage codecs for outbox payloads.
+ * Rows without a codec marker hold plain JSON in the payload column (every row written before
+ * compression existed); rows with a marker hold the encoded bytes in payload_data.
+ */
+public enum OutboxPayloadCodec {
+
+    NONE {
+        @Override
+        public byte[] encode(String json) {
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] data) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    },
+
+    GZIP {
+        @Override
+        public byte[] encode(String json) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(json.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compress outbox payload", e);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public String decode(byte[] data) {
+            try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+                return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to decompress outbox payload", e);
+            }
+        }
+    };
+
+    public abstract byte[] encode(String json);
+
+    public abstract String decode(byte[] data);
+
+    // Value stored in outbox_events.payload_codec; NONE is stored as null
+    public String marker() {
+        return this == NONE ? null : name().toLowerCase(Locale.ROOT);
+    }
+
+    public static OutboxPayloadCodec fromMarker(String marker) {
+        return marker == null || marker.isBlank() ? NONE : valueOf(marker.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public static boolean hasPayload(OutboxEvent event) {
+        return event.getPayloadCodec() == null ? event.getPayload() != null : event.getPayloadData() != null;
+    }
+
+    // The event payload as JSON text, whichever way the row was stored
+    public static String jsonOf(OutboxEvent event) {
+        if (event.getPayloadCodec() == null) {
+            return event.getPayload();
+        }
+        return fromMarker(event.getPayloadCodec()).decode(event.getPayloadData());
+    }
+}
@@ -0,0 +1,43 @@
+package na.library.kafkadeliverysemantics.service;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Value deserializer for outbox topics. Records the relay ships compressed (outbox.relay.ship-compressed)
+ * carry a content-encoding header and no type header; they are decoded with the matching
+ * {@link OutboxPayloadCodec} and then parsed as JSON like every other record.
+ */
+public class OutboxPayloadDeserializer implements Deserializer<Object> {
+
+    private final JsonDeserializer<Object> delegate = new JsonDeserializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return delegate.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        String encoding = KafkaRecordHeaders.lastString(headers, KafkaRecordHeaders.CONTENT_ENCODING);
+        if (encoding == null || data == null) {
+            return delegate.deserialize(topic, headers, data);
+        }
+        String json = OutboxPayloadCodec.fromMarker(encoding).decode(data);
+        return delegate.deserialize(topic, headers, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
@@ -1,126 +1,416 @@
 package na.library.kafkadeliverysemantics.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.config.WorkerThreads;
 import na.library.kafkadeliverysemantics.entity.OutboxEvent;
 import na.library.kafkadeliverysemantics.repository.OutboxRepository;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
-import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Profile("exactly-once")
 @Slf4j
 public class OutboxRelayService {
 
-    private static final int SEND_TIMEOUT_SECONDS = 10;
-
     private final OutboxRepository outboxRepository;
+    private final OutboxClaimService claimService;
     private final KafkaTemplate<String, Object> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final ProducerFactory<String, Object> producerFactory;
+    private final OutboxEventPublisher eventPublisher;
+    // Same time source as OutboxClaimService, so lease expiry is judged the same way everywhere
+    private final Clock clock;
+
+    // When enabled, events are relayed in batches: one Kafka transaction and one DB update per batch
+    @Value("${outbox.relay.batch-enabled:false}")
+    private boolean batchEnabled;
+
+    // Page size of the outbox fetch; in batch mode each page is relayed as one batch
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    // Number of worker lanes; events are sharded onto lanes by aggregateId
+    @Value("${outbox.relay.lanes:1}")
+    private int lanes;
+
+    @Value("${spring.kafka.client-id}")
+    private String clientId;
+
+    // When enabled, each instance relays only the rows it has leased via OutboxClaimService
+    @Value("${outbox.relay.claim.enabled:false}")
+    private boolean claimEnabled;
+
+    @Value("${outbox.relay.claim.lease-duration:60s}")
+    private Duration leaseDuration;
+
+    @Value("${outbox.relay.instance-id:${random.uuid}}")
+    private String instanceId;
+
+    // With the publish-on-commit fast path on, the relay only sweeps rows older than this
+    @Value("${outbox.fast-path.enabled:false}")
+    private boolean fastPathEnabled;
+
+    @Value("${outbox.fast-path.sweep-delay:30s}")
+    private Duration sweepDelay;
+
+    // Adaptive polling: the interval shrinks under load and grows while the outbox is empty
+    @Value("${outbox.relay.poll.min-interval:100ms}")
+    private Duration minInterval;
+
+    @Value("${outbox.relay.poll.max-interval:15s}")
+    private Duration maxInterval;
+
+    // Bounds a single run so the interval is re-evaluated regularly during a large backlog
+    @Value("${outbox.relay.poll.max-pages-per-run:20}")
+    private int maxPagesPerRun;
+
+    // The backlog gauge needs a COUNT over the outbox; refresh it at most this often
+    @Value("${outbox.relay.poll.backlog-sample-interval:5s}")
+    private Duration backlogSampleInterval;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private ScheduledExecutorService poller;
+    private final AtomicLong currentInterval = new AtomicLong();
+    private final AtomicLong backlog = new AtomicLong();
+    private boolean backlogSampled;
+    private long lastBacklogSample;
+    private final Counter relayedEvents;
+
+    // One transactional template per lane, each with its own transactional.id prefix;
+    // the prefix includes the instance id so replicas never share a transactional.id
+    private final List<KafkaTemplate<String, Object>> laneTemplates = new ArrayList<>();
+    private ExecutorService laneExecutor;
 
     public OutboxRelayService(OutboxRepository outboxRepository,
-                              @Qualifier("exactlyOnceKafkaTemplate") KafkaTemplate<String, Object> kafkaTemplate,
-                              ObjectMapper objectMapper) {
+                              OutboxClaimService claimService,
+                              @Qualifier("outboxRelayKafkaTemplate") KafkaTemplate<String, Object> kafkaTemplate,
+                              @Qualifier("outboxRelayProducerFactory") ProducerFactory<String, Object> producerFactory,
+                              OutboxEventPublisher eventPublisher,
+                              Clock clock,
+                              MeterRegistry meterRegistry) {
         this.outboxRepository = outboxRepository;
+        this.claimService = claimService;
         this.kafkaTemplate = kafkaTemplate;
-        this.objectMapper = objectMapper;
-    }
-
-    // Run every 15 seconds
-    @Scheduled(fixedRate = 15000)
-    public void relayMessages() {
-        List<OutboxEvent> unprocessedEvents = outboxRepository.findUnprocessedEvents();
-
-        if (!unprocessedEvents.isEmpty()) {
-            log.info("Found {} unprocessed events to relay", unprocessedEvents.size());
-
-            for (OutboxEvent event : unprocessedEvents) {
-                try {
-                    // Use kafkaTemplate.executeInTransaction to ensure there's always a transaction
-                    kafkaTemplate.executeInTransaction(operations -> {
-                        relayEventInTransaction(event, operations);
-                        return null;
-                    });
-                } catch (Exception e) {
-                    log.error("Failed to relay event: {}", event.getId(), e);
-                    // Continue with the next event
-                }
+        this.producerFactory = producerFactory;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+        this.relayedEvents = meterRegistry.counter("outbox.relay.events");
+        Gauge.builder("outbox.relay.interval", currentInterval, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .description("Delay until the next outbox relay run")
+                .register(meterRegistry);
+        Gauge.builder("outbox.relay.backlog", backlog, AtomicLong::get)
+                .description("Unprocessed outbox events after the last relay run")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void initExecutors() {
+        poller = Executors.newSingleThreadScheduledExecutor(WorkerThreads.factory("outbox-relay-poller-", virtualThreads));
+        if (lanes <= 1) {
+            laneTemplates.add(kafkaTemplate);
+            return;
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            KafkaTemplate<String, Object> template = new KafkaTemplate<>(producerFactory);
+            template.setTransactionIdPrefix(clientId + "-tx-outbox-" + instanceId + "-lane-" + lane + "-");
+            laneTemplates.add(template);
+        }
+        laneExecutor = Executors.newFixedThreadPool(lanes, WorkerThreads.factory("outbox-relay-lane-", virtualThreads));
+        log.info("Outbox relay running with {} lanes", lanes);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        poller.shutdownNow();
+        if (laneExecutor != null) {
+            laneExecutor.shutdown();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void startPolling() {
+        poller.schedule(this::poll, minInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Self-rescheduling loop: poll again right away while the backlog keeps filling the page limit,
+    // use the minimum interval while events trickle in, and back off exponentially up to the ceiling when idle
+    // or when nothing could be relayed (e.g. Kafka is down)
+    private void poll() {
+        long delay;
+        try {
+            RelayRun run = relayMessages();
+            if (run.relayed() == 0) {
+                delay = Math.min(Math.max(currentInterval.get() * 2, minInterval.toMillis()), maxInterval.toMillis());
+            } else if (run.morePending()) {
+                delay = 0;
+            } else {
+                delay = minInterval.toMillis();
             }
+            sampleBacklog();
+        } catch (Exception e) {
+            log.error("Outbox relay run failed", e);
+            delay = maxInterval.toMillis();
+        }
+        currentInterval.set(delay);
+        if (!poller.isShutdown()) {
+            poller.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
         }
     }
 
-    // This method handles the Kafka message send process within an existing transaction
-    private void relayEventInTransaction(OutboxEvent event, KafkaOperations<String, Object> operations) {
-        if (event == null || event.getPayload() == null) {
-            log.error("Invalid event received: {}", event);
+    private void sampleBacklog() {
+        long now = System.nanoTime();
+        if (backlogSampled && now - lastBacklogSample < backlogSampleInterval.toNanos()) {
             return;
         }
+        backlogSampled = true;
+        lastBacklogSample = now;
+        backlog.set(outboxRepository.countByProcessedFalse());
+    }
 
-        try {
-            // Deserialize the event payload to Message object
-            Message message = objectMapper.readValue(event.getPayload(), Message.class);
+    public RelayRun relayMessages() {
+        long start = System.nanoTime();
+
+        // Aggregates with a failed event in this run; their later events wait for the next run
+        // so that events of the same aggregate are never published out of order
+        Set<String> blockedAggregates = ConcurrentHashMap.newKeySet();
+
+        RelayRun run = claimEnabled ? relayClaimedPages(blockedAggregates) : relayPages(blockedAggregates);
+
+        if (run.relayed() > 0) {
+            relayedEvents.increment(run.relayed());
+            logThroughput(batchEnabled ? "batch" : "per-event", run.relayed(), start);
+        }
+        return run;
+    }
+
+    // Stream through the backlog in fixed-size keyset pages so memory stays bounded
+    private RelayRun relayPages(Set<String> blockedAggregates) {
+        int found = 0;
+        int relayed = 0;
+        int pages = 0;
+        OutboxEvent last = null;
+        List<OutboxEvent> page;
+        boolean sweptAll;
+        do {
+            page = fetchPage(last);
+            if (page.isEmpty()) {
+                break;
+            }
+            pages++;
+            last = page.get(page.size() - 1);
+            List<OutboxEvent> relayable = sweepable(page, blockedAggregates);
+            sweptAll = relayable.size() == page.size();
+            if (!relayable.isEmpty()) {
+                log.info("Found {} unprocessed events to relay", relayable.size());
+                found += relayable.size();
+                relayed += relayPage(relayable, blockedAggregates);
+            }
+        } while (sweptAll && page.size() == batchSize && pages < maxPagesPerRun);
+        return new RelayRun(found, relayed, pages == maxPagesPerRun && page.size() == batchSize);
+    }
+
+    // Relay only the rows this instance holds a lease on, so several instances can share the outbox
+    private RelayRun relayClaimedPages(Set<String> blockedAggregates) {
+        int found = 0;
+        int relayed = 0;
+        int pages = 0;
+        List<OutboxEvent> page;
+        do {
+            try {
+                page = claimService.claimBatch(instanceId, batchSize, leaseDuration);
+            } catch (Exception e) {
+                log.warn("Relay {} failed to claim outbox rows, retrying on the next run", instanceId, e);
+                break;
+            }
+            if (page.isEmpty()) {
+                break;
+            }
+            pages++;
+            log.info("Relay {} claimed {} events to relay", instanceId, page.size());
+            found += page.size();
+            int count = relayPage(page, blockedAggregates);
+            relayed += count;
+            if (count == 0) {
+                // Everything we hold is blocked by a failure; the lease keeps it ours until the next run
+                return new RelayRun(found, relayed, false);
+            }
+        } while (page.size() == batchSize && pages < maxPagesPerRun);
+        return new RelayRun(found, relayed, pages == maxPagesPerRun);
+    }
+
+    // Pages are ordered by createdAt, so the fast path's in-flight rows are always at the tail.
+    // Rows the fast path has leased are skipped even when older than the sweep delay, and their
+    // aggregates wait for the next run so that later events do not overtake them.
+    private List<OutboxEvent> sweepable(List<OutboxEvent> page, Set<String> blockedAggregates) {
+        if (!fastPathEnabled) {
+            return page;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime cutoff = now.minus(sweepDelay);
+        List<OutboxEvent> sweepable = new ArrayList<>(page.size());
+        for (OutboxEvent event : page) {
+            if (!event.getCreatedAt().isBefore(cutoff)) {
+                break;
+            }
+            if (event.getLeaseUntil() != null && !event.getLeaseUntil().isBefore(now)) {
+                blockedAggregates.add(event.getAggregateId());
+                continue;
+            }
+            sweepable.add(event);
+        }
+        return sweepable;
+    }
+
+    private List<OutboxEvent> fetchPage(OutboxEvent after) {
+        if (after == null) {
+            return outboxRepository.findUnprocessedEvents(Limit.of(batchSize));
+        }
+        return outboxRepository.findUnprocessedEventsAfter(after.getCreatedAt(), after.getId(), Limit.of(batchSize));
+    }
+
+    // Shards the page onto lanes and waits for every lane before the next page is fetched,
+    // so two events of one aggregate are never in flight at the same time
+    private int relayPage(List<OutboxEvent> page, Set<String> blockedAggregates) {
+        if (laneExecutor == null) {
+            return relayLane(laneTemplates.get(0), page, blockedAggregates);
+        }
+
+        List<List<OutboxEvent>> shards = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            shards.add(new ArrayList<>());
+        }
+        for (OutboxEvent event : page) {
+            shards.get(laneOf(event)).add(event);
+        }
 
-            // Determine the topic based on event type
-            String topic = determineTopicFromEventType(event.getEventType());
+        List<Future<Integer>> results = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) {
+            List<OutboxEvent> shard = shards.get(lane);
+            if (!shard.isEmpty()) {
+                KafkaTemplate<String, Object> template = laneTemplates.get(lane);
+                results.add(laneExecutor.submit(() -> relayLane(template, shard, blockedAggregates)));
+            }
+        }
+
+        int relayed = 0;
+        for (Future<Integer> result : results) {
+            relayed += awaitLane(result);
+        }
+        return relayed;
+    }
 
-            // Send message to Kafka using the operations template that's already in a transaction
-            CompletableFuture<SendResult<String, Object>> future = operations.send(topic, message.getId(), message);
+    private int laneOf(OutboxEvent event) {
+        return Math.floorMod(Objects.hashCode(event.getAggregateId()), lanes);
+    }
 
+    private int awaitLane(Future<Integer> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread interrupted while waiting for relay lane", e);
+        } catch (ExecutionException e) {
+            log.error("Relay lane failed", e.getCause());
+            return 0;
+        }
+    }
+
+    private int relayLane(KafkaTemplate<String, Object> template, List<OutboxEvent> events, Set<String> blockedAggregates) {
+        List<OutboxEvent> relayable = events.stream()
+                .filter(event -> !blockedAggregates.contains(event.getAggregateId()))
+                .toList();
+        if (relayable.isEmpty()) {
+            return 0;
+        }
+        return batchEnabled
+                ? relayBatch(template, relayable, blockedAggregates)
+                : relayOneByOne(template, relayable, blockedAggregates);
+    }
+
+    private int relayOneByOne(KafkaTemplate<String, Object> template, List<OutboxEvent> events, Set<String> blockedAggregates) {
+        int relayed = 0;
+        for (OutboxEvent event : events) {
+            if (blockedAggregates.contains(event.getAggregateId())) {
+                continue;
+            }
             try {
-                // Wait for the result with a timeout to avoid blocking indefinitely
-                SendResult<String, Object> result = future.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-
-                // Log the result of the Kafka send operation
-                log.info("Relayed message to Kafka: {}, offset: {}", message.getId(), result.getRecordMetadata().offset());
-
-                // After successful message send, mark the event as processed in the database
-                event.setProcessed(true);
-                outboxRepository.save(event);  // Save event status to mark it as processed
-
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.error("Thread interrupted while relaying message: {}", message.getId(), e);
-                throw new RuntimeException("Thread interrupted while relaying message", e);
-            } catch (ExecutionException e) {
-                log.error("Error executing Kafka send for message: {}", message.getId(), e);
-                throw new RuntimeException("Failed to send message to Kafka", e.getCause());
-            } catch (TimeoutException e) {
-                log.error("Timeout while sending message to Kafka: {}", message.getId(), e);
-                throw new RuntimeException("Timeout sending message to Kafka", e);
+                // Use executeInTransaction to ensure there's always a transaction
+                template.executeInTransaction(operations -> {
+                    eventPublisher.publishInTransaction(event, leaseOwner(), operations);
+                    return null;
+                });
+                relayed++;
+            } catch (Exception e) {
+                log.error("Failed to relay event: {}", event.getId(), e);
+                // Continue with the next event, but hold back the rest of this aggregate
+                blockedAggregates.add(event.getAggregateId());
             }
+        }
+        return relayed;
+    }
 
+    private int relayBatch(KafkaTemplate<String, Object> template, List<OutboxEvent> batch, Set<String> blockedAggregates) {
+        long start = System.nanoTime();
+        try {
+            int count = template.executeInTransaction(operations -> eventPublisher.publishBatchInTransaction(batch, leaseOwner(), operations));
+            logThroughput("batch of " + batch.size(), count, start);
+            return count;
         } catch (Exception e) {
-            // In case of failure (Kafka or JPA), the transaction will roll back
-            log.error("Error processing outbox event: {}", event.getId(), e);
-            throw new RuntimeException("Failed to relay message", e);
+            // The whole batch is aborted; its events stay unprocessed and are retried on the next run
+            log.error("Failed to relay batch of {} events starting at event: {}", batch.size(), batch.get(0).getId(), e);
+            batch.forEach(event -> blockedAggregates.add(event.getAggregateId()));
+            return 0;
         }
     }
 
-    // This helper method determines the Kafka topic based on the event type
-    private String determineTopicFromEventType(String eventType) {
-        if (eventType == null) {
-            log.warn("Event type is null, using default topic");
-            return "default-topic";
-        }
+    // Rows relayed without claiming carry no lease
+    private String leaseOwner() {
+        return claimEnabled ? instanceId : null;
+    }
+
+    private void logThroughput(String mode, int relayed, long startNanos) {
+        long elapsedMicros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        log.info("Relayed {} events ({}) in {} ms, {} events/s",
+                relayed, mode, elapsedMicros / 1000, relayed * 1_000_000L / elapsedMicros);
+    }
 
-        // Map event types to Kafka topics
-        return switch (eventType) {
-            case "MESSAGE_CREATED" -> "message-created-topic";
-            case "MESSAGE_UPDATED" -> "message-updated-topic";
-            case "MESSAGE_DELETED" -> "message-deleted-topic";
-            default -> "default-topic";
-        };
+    /**
+     * Outcome of one relay run.
+     *
+     * @param found Events picked up in this run
+     * @param relayed Events published and marked as processed
+     * @param morePending Whether the run stopped at the page limit with more events waiting
+     */
+    public record RelayRun(int found, int relayed, boolean morePending) {
     }
-}
\ No newline at end of file
+}
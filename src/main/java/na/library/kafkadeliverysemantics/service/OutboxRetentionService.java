@@ -0,0 +1,80 @@
+package na.library.kafkadeliverysemantics.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes processed outbox rows once they are older than the retention window.
+ * Rows are removed in small chunks, each in its own short transaction, so the purge never
+ * holds long locks on outbox_events or builds up one huge transaction.
+ */
+@Service
+@Profile("exactly-once")
+@Slf4j
+public class OutboxRetentionService {
+
+    private final OutboxRepository outboxRepository;
+    private final Counter purgedRows;
+    private final Timer purgeDuration;
+    private final AtomicLong tableSize = new AtomicLong();
+
+    // How long processed rows are kept after they were relayed
+    @Value("${outbox.retention.window:7d}")
+    private Duration retentionWindow;
+
+    @Value("${outbox.retention.chunk-size:1000}")
+    private int chunkSize;
+
+    // Upper bound per run, so a large first purge is spread over several runs
+    @Value("${outbox.retention.max-chunks-per-run:100}")
+    private int maxChunksPerRun;
+
+    public OutboxRetentionService(OutboxRepository outboxRepository, MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.purgedRows = meterRegistry.counter("outbox.retention.purged");
+        this.purgeDuration = Timer.builder("outbox.retention.duration")
+                .description("Duration of one outbox retention run")
+                .register(meterRegistry);
+        Gauge.builder("outbox.table.size", tableSize, AtomicLong::get)
+                .description("Rows in outbox_events after the last retention run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.retention.interval:PT1M}")
+    public void purgeProcessedEvents() {
+        purgeDuration.record(() -> {
+            LocalDateTime cutoff = LocalDateTime.now().minus(retentionWindow);
+            int purged = 0;
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                List<Long> ids = outboxRepository.findPurgeableIds(cutoff, Limit.of(chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                outboxRepository.deleteAllByIdInBatch(ids);
+                purged += ids.size();
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+            if (purged > 0) {
+                purgedRows.increment(purged);
+                log.info("Purged {} processed outbox events older than {}", purged, cutoff);
+            }
+            tableSize.set(outboxRepository.count());
+        });
+    }
+}
@@ -2,14 +2,21 @@ package na.library.kafkadeliverysemantics.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.AggregateSequence;
 import na.library.kafkadeliverysemantics.entity.Message;
 import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import na.library.kafkadeliverysemantics.repository.AggregateSequenceRepository;
 import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Service
 @Profile("outbox")
@@ -18,7 +25,14 @@ import org.springframework.transaction.annotation.Transactional;
 public class OutboxService {
 
     private final OutboxRepository outboxRepository;
+    private final AggregateSequenceRepository sequenceRepository;
     private final ObjectMapper objectMapper;
+    private final ObjectProvider<OutboxFastPathPublisher> fastPathPublisher;
+    private final MeterRegistry meterRegistry;
+
+    // Storage codec for new outbox payloads: none or gzip
+    @Value("${outbox.payload.codec:none}")
+    private String payloadCodec;
 
     @Transactional("transactionManager")
     public void saveToOutbox(Message message, String eventType) {
@@ -34,13 +48,70 @@ public class OutboxService {
                     payload                    // payload
             );
 
+            outboxEvent.setSequence(nextSequence(message.getId()));
+
+            // Optionally store the payload compressed; the codec marker tells the relay how to read it back
+            OutboxPayloadCodec codec = OutboxPayloadCodec.fromMarker(payloadCodec);
+            long storedBytes;
+            if (codec == OutboxPayloadCodec.NONE) {
+                // Plain JSON stays in the payload column; its UTF-8 length is all the metric needs
+                storedBytes = utf8Length(payload);
+            } else {
+                byte[] stored = codec.encode(payload);
+                outboxEvent.setPayloadData(stored);
+                outboxEvent.setPayloadCodec(codec.marker());
+                outboxEvent.setPayload(null);
+                storedBytes = stored.length;
+            }
+            meterRegistry.summary("outbox.payload.bytes", "codec", codec.name()).record(storedBytes);
+
             // Save to outbox table (will be committed in the same transaction)
             outboxRepository.save(outboxEvent);
 
             log.info("Message saved to outbox: {}", message.getId());
+
+            // Publish right after commit when the fast path is enabled; the relay remains the fallback
+            OutboxFastPathPublisher publisher = fastPathPublisher.getIfAvailable();
+            if (publisher != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        publisher.publishAsync(outboxEvent);
+                    }
+                });
+            }
         } catch (JsonProcessingException e) {
             log.error("Failed to serialize message to JSON", e);
             throw new RuntimeException("Failed to save to outbox", e);
         }
     }
+
+    private static long utf8Length(String text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // The row stays locked until the outbox transaction commits, so sequences follow commit order per aggregate.
+    // Two transactions creating the first event of the same aggregate at once conflict on the primary key;
+    // the loser rolls back and has to be retried by the caller.
+    private long nextSequence(String aggregateId) {
+        AggregateSequence sequence = sequenceRepository.findForUpdate(aggregateId)
+                .orElseGet(() -> new AggregateSequence(aggregateId, 0L));
+        sequence.setLastSequence(sequence.getLastSequence() + 1);
+        sequenceRepository.save(sequence);
+        return sequence.getLastSequence();
+    }
 }
\ No newline at end of file
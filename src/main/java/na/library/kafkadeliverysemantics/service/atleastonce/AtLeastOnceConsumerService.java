@@ -1,25 +1,36 @@
 package na.library.kafkadeliverysemantics.service.atleastonce;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import na.library.kafkadeliverysemantics.entity.Message;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 
 @Service
 @Profile("at-least-once")
+@RequiredArgsConstructor
 @Slf4j
 public class AtLeastOnceConsumerService {
 
-    @KafkaListener(topics = "at-least-once-topic", containerFactory = "atLeastOnceContainerFactory", groupId = "${consumer.atleastonce.group.id}")
-    public void consume(Message message, Acknowledgment acknowledgment) {
+    private final MeterRegistry meterRegistry;
+
+    // Share of messages failing on purpose, to exercise the retry topics; 0 turns it off
+    @Value("${consumer.atleastonce.simulated-failure-rate:0.1}")
+    private double simulatedFailureRate;
+
+    // Also consumes the retry topics created by atLeastOnceRetryTopicConfiguration
+    @KafkaListener(topics = "at-least-once-topic", containerFactory = "atLeastOnceContainerFactory", groupId = "${consumer.atleastonce.group.id}",
+            autoStartup = "#{!${consumer.parallel.enabled:false} and !${consumer.flow-control.enabled:false}}")
+    public void consume(Message message, Acknowledgment acknowledgment,
+                        @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
         try {
             log.info("Consuming message: {}", message);
-            String a = null;
-            if(a.length()>0){
-                System.out.println("fafafaf");
-            }
             // Process the message with your business logic
             processMessage(message);
             
@@ -27,33 +38,34 @@ public class AtLeastOnceConsumerService {
             acknowledgment.acknowledge();
             log.info("Message processed and acknowledged: {}", message.getId());
         } catch (Exception e) {
-            // Log the error but don't acknowledge
-            // The message will be redelivered according to Kafka's configuration
+            // Don't acknowledge; the retry topic error handler forwards the record to the
+            // next delay topic (or the dead-letter topic) and commits its offset here
             log.error("Error processing message: {}", message.getId(), e);
-            
-            // Depending on your retry strategy, you might:
-            // 1. Just log and let Kafka retry by not acknowledging
-            // 2. Implement custom retry logic with backoff
-            // 3. For poison messages, acknowledge after sending to DLQ
-            handleProcessingError(message, e);
+            handleProcessingError(message, topic, e);
+            throw e;
         }
     }
+
+    // Records that failed on every retry tier end up here
+    public void handleDeadLetter(Message message, @Header(KafkaHeaders.RECEIVED_TOPIC) String topic) {
+        meterRegistry.counter("atleastonce.dead.letters").increment();
+        log.error("Message moved to dead-letter topic {}: {}", topic, message.getId());
+    }
     
     private void processMessage(Message message) {
         // Implement your business logic here
         log.info("Processing message with ID: {}", message.getId());
         
         // Simulate processing that might fail randomly (for testing)
-        if (Math.random() < 0.1) {
+        if (Math.random() < simulatedFailureRate) {
             throw new RuntimeException("Simulated random processing failure");
         }
     }
     
-    private void handleProcessingError(Message message, Exception e) {
-        // Track error count for this message ID in a persistent store
-        // If error count exceeds threshold, send to DLQ and acknowledge
-        // This is a simple implementation; in production, you'd use a DB to track retries
-        
-        log.warn("Message processing error, will be retried: {}", message.getId());
+    private void handleProcessingError(Message message, String topic, Exception e) {
+        // One counter per tier: the main topic and each retry topic
+        meterRegistry.counter("atleastonce.processing.failures",
+                "tier", topic, "exception", e.getClass().getSimpleName()).increment();
+        log.warn("Message processing error on {}, will be retried: {}", topic, message.getId());
     }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package na.library.kafkadeliverysemantics.service.atleastonce;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.service.flowcontrol.BackpressureDispatcher;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+/**
+ * At-least-once consumer whose processing runs asynchronously under flow control.
+ * Partitions are paused while too much of their work is in flight, instead of the listener
+ * thread blocking until a slow handler pushes the member past max.poll.interval.ms.
+ */
+@Service
+@Profile("at-least-once")
+@ConditionalOnProperty(name = "consumer.flow-control.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class AtLeastOnceFlowControlledConsumerService {
+
+    static final String LISTENER_ID = "atLeastOnceFlowControlled";
+
+    private final BackpressureDispatcher dispatcher;
+
+    // Receives records that still fail after the dispatcher's retries
+    private final DeadLetterPublishingRecoverer atLeastOnceDeadLetterRecoverer;
+
+    @KafkaListener(id = LISTENER_ID, topics = "at-least-once-topic", containerFactory = "atLeastOnceAsyncContainerFactory",
+            groupId = "${consumer.atleastonce.group.id}")
+    public void consume(ConsumerRecord<String, Message> record, Acknowledgment acknowledgment) {
+        dispatcher.dispatch(LISTENER_ID, record, acknowledgment, () -> processMessage(record.value()),
+                atLeastOnceDeadLetterRecoverer);
+    }
+
+    private void processMessage(Message message) {
+        // Implement your business logic here
+        log.info("Processing message with ID: {}", message.getId());
+    }
+}
@@ -0,0 +1,43 @@
+package na.library.kafkadeliverysemantics.service.atleastonce;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.service.parallel.KeyOrderedParallelProcessor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * At-least-once consumer that processes a partition's records in parallel, ordered per key.
+ * Offsets are committed only up to the first unfinished record, so nothing is skipped.
+ */
+@Service
+@Profile("at-least-once")
+@ConditionalOnProperty(name = "consumer.parallel.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class AtLeastOnceParallelConsumerService {
+
+    private final KeyOrderedParallelProcessor parallelProcessor;
+
+    // Receives records that still fail after the processor's retries
+    private final DeadLetterPublishingRecoverer atLeastOnceDeadLetterRecoverer;
+
+    @KafkaListener(topics = "at-least-once-topic", containerFactory = "atLeastOnceParallelContainerFactory", groupId = "${consumer.atleastonce.group.id}")
+    public void consume(List<ConsumerRecord<String, Message>> records, Consumer<?, ?> consumer) {
+        parallelProcessor.processAndCommit(records, consumer, record -> processMessage(record.value()),
+                atLeastOnceDeadLetterRecoverer);
+    }
+
+    private void processMessage(Message message) {
+        // Implement your business logic here
+        log.info("Processing message with ID: {}", message.getId());
+    }
+}
@@ -2,6 +2,8 @@ package na.library.kafkadeliverysemantics.service.atleastonce;
 
 import na.library.kafkadeliverysemantics.entity.Message;
 import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.service.KafkaRecordHeaders;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -33,7 +35,7 @@ public class AtLeastOnceProducerService {
                 .build();
         
         // Send message and handle future result
-        CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(TOPIC, messageId, message);
+        CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(createRecord(TOPIC, messageId, message));
         
         future.whenComplete((result, ex) -> {
             if (ex == null) {
@@ -59,7 +61,7 @@ public class AtLeastOnceProducerService {
     }
     
     private void sendWithRetry(String topic, String key, Message message, int currentRetry, int maxRetries) {
-        CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(topic, key, message);
+        CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(createRecord(topic, key, message));
         
         future.whenComplete((result, ex) -> {
             if (ex == null) {
@@ -80,6 +82,13 @@ public class AtLeastOnceProducerService {
         });
     }
     
+    // The message id header lets consumers skip duplicates before parsing the payload
+    private ProducerRecord<String, Object> createRecord(String topic, String key, Message message) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, key, message);
+        KafkaRecordHeaders.addString(record.headers(), KafkaRecordHeaders.MESSAGE_ID, message.getId());
+        return record;
+    }
+
     private void storeFailedMessage(Message message) {
         // Store in database or other persistent storage for manual recovery
         log.info("Storing failed message for recovery: {}", message.getId());
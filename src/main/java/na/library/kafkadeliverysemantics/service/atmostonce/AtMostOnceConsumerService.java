@@ -11,7 +11,8 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class AtMostOnceConsumerService {
 
-    @KafkaListener(topics = "at-most-once-topic", containerFactory = "atMostOnceContainerFactory", groupId = "${consumer.atmostonce.group.id}")
+    @KafkaListener(topics = "at-most-once-topic", containerFactory = "atMostOnceContainerFactory", groupId = "${consumer.atmostonce.group.id}",
+            autoStartup = "#{!${consumer.parallel.enabled:false}}")
     public void consume(Message message) {
         log.info("Consumed message: {}", message);
         // Process message without any additional checks or error handling
@@ -0,0 +1,40 @@
+package na.library.kafkadeliverysemantics.service.atmostonce;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.service.parallel.KeyOrderedParallelProcessor;
+import na.library.kafkadeliverysemantics.service.parallel.OffsetTracker;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * At-most-once consumer that processes a partition's records in parallel, ordered per key.
+ * The whole poll is committed before processing starts, so failed records are lost, never repeated.
+ */
+@Service
+@Profile("at-most-once")
+@ConditionalOnProperty(name = "consumer.parallel.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class AtMostOnceParallelConsumerService {
+
+    private final KeyOrderedParallelProcessor parallelProcessor;
+
+    @KafkaListener(topics = "at-most-once-topic", containerFactory = "atMostOnceParallelContainerFactory", groupId = "${consumer.atmostonce.group.id}")
+    public void consume(List<ConsumerRecord<String, Message>> records, Consumer<?, ?> consumer) {
+        consumer.commitSync(OffsetTracker.endOffsetsOf(records));
+        parallelProcessor.process(records, record -> processMessage(record.value()));
+    }
+
+    private void processMessage(Message message) {
+        // Business logic for processing the message
+        log.info("Processing message with ID: {}", message.getId());
+    }
+}
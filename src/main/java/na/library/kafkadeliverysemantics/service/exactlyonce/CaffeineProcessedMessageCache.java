@@ -0,0 +1,45 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded dedup cache with size and TTL eviction.
+ * Hit, miss and eviction counts are published as cache.* metrics with cache=processed-messages.
+ */
+@Component
+@Profile("exactly-once")
+@ConditionalOnProperty(name = "consumer.exactlyonce.dedup.cache", havingValue = "caffeine", matchIfMissing = true)
+public class CaffeineProcessedMessageCache implements ProcessedMessageCache {
+
+    private final Cache<String, Boolean> cache;
+
+    public CaffeineProcessedMessageCache(@Value("${consumer.exactlyonce.dedup.capacity:100000}") long capacity,
+                                         @Value("${consumer.exactlyonce.dedup.ttl:1h}") Duration ttl,
+                                         MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(capacity)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "processed-messages");
+    }
+
+    @Override
+    public boolean contains(String messageId) {
+        return cache.getIfPresent(messageId) != null;
+    }
+
+    @Override
+    public void add(String messageId) {
+        cache.put(messageId, Boolean.TRUE);
+    }
+}
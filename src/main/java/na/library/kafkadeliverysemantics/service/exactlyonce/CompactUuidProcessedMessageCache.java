@@ -0,0 +1,221 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dedup cache that stores UUID message ids as two primitive longs in open-addressing tables.
+ * An entry costs 16 bytes per slot instead of a String, its char data, a map node and a Boolean.
+ * <p>
+ * Memory is fixed up front: the id space is split into lock-striped segments, and each segment keeps
+ * two generations of at most {@code maxEntries / segments / 2} ids. When the current generation is
+ * full, the older one is dropped, so the most recent ids are always retained.
+ * Ids that are not UUIDs are never cached; they always fall through to the repository.
+ */
+@Component
+@Profile("exactly-once")
+@ConditionalOnProperty(name = "consumer.exactlyonce.dedup.cache", havingValue = "compact")
+public class CompactUuidProcessedMessageCache implements ProcessedMessageCache {
+
+    private static final int SEGMENTS = 64;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public CompactUuidProcessedMessageCache(@Value("${consumer.exactlyonce.dedup.capacity:100000}") int maxEntries,
+                                            MeterRegistry meterRegistry) {
+        int generationCapacity = Math.max(16, maxEntries / SEGMENTS / 2);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(generationCapacity);
+        }
+        this.hits = meterRegistry.counter("dedup.compact.requests", "result", "hit");
+        this.misses = meterRegistry.counter("dedup.compact.requests", "result", "miss");
+        this.evictions = meterRegistry.counter("dedup.compact.evictions");
+        Gauge.builder("dedup.compact.size", this, CompactUuidProcessedMessageCache::size)
+                .description("Message ids currently held by the compact dedup cache")
+                .register(meterRegistry);
+        Gauge.builder("dedup.compact.memory", segments, s -> (double) s.length * s[0].memoryBytes())
+                .baseUnit("bytes")
+                .description("Fixed memory reserved by the compact dedup cache")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean contains(String messageId) {
+        UUID uuid = parse(messageId);
+        if (uuid == null) {
+            misses.increment();
+            return false;
+        }
+        long hi = uuid.getMostSignificantBits();
+        long lo = uuid.getLeastSignificantBits();
+        long hash = mix(hi, lo);
+        boolean found = segmentFor(hash).contains(hi, lo, hash);
+        (found ? hits : misses).increment();
+        return found;
+    }
+
+    @Override
+    public void add(String messageId) {
+        UUID uuid = parse(messageId);
+        if (uuid == null) {
+            return;
+        }
+        long hi = uuid.getMostSignificantBits();
+        long lo = uuid.getLeastSignificantBits();
+        long hash = mix(hi, lo);
+        if (segmentFor(hash).add(hi, lo, hash)) {
+            evictions.increment();
+        }
+    }
+
+    private long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> 58)];
+    }
+
+    private static UUID parse(String messageId) {
+        if (messageId == null || messageId.length() != 36) {
+            return null;
+        }
+        try {
+            return UUID.fromString(messageId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Murmur3 finalizer over both halves; the top bits pick the segment, the low bits the slot
+    private static long mix(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Package-private so tests can drive probing with chosen hashes
+    static final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final int mask;
+
+        // Pairs of (hi, lo); an all-zero pair marks an empty slot, the nil UUID is tracked separately
+        private long[] current;
+        private long[] previous;
+        private int currentSize;
+        private int previousSize;
+        private boolean nilInCurrent;
+        private boolean nilInPrevious;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            // Keep the load factor at or below 0.5 so probe chains stay short
+            int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            this.mask = slots - 1;
+            this.current = new long[slots * 2];
+            this.previous = new long[slots * 2];
+        }
+
+        boolean contains(long hi, long lo, long hash) {
+            lock.lock();
+            try {
+                if (hi == 0 && lo == 0) {
+                    return nilInCurrent || nilInPrevious;
+                }
+                return find(current, hi, lo, hash) || find(previous, hi, lo, hash);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Returns true when the add dropped the older generation
+        boolean add(long hi, long lo, long hash) {
+            lock.lock();
+            try {
+                if (hi == 0 && lo == 0) {
+                    nilInCurrent = true;
+                    return false;
+                }
+                if (find(current, hi, lo, hash)) {
+                    return false;
+                }
+                boolean evicted = false;
+                if (currentSize >= capacity) {
+                    evicted = previousSize > 0 || nilInPrevious;
+                    long[] recycled = previous;
+                    Arrays.fill(recycled, 0L);
+                    previous = current;
+                    previousSize = currentSize;
+                    nilInPrevious = nilInCurrent;
+                    current = recycled;
+                    currentSize = 0;
+                    nilInCurrent = false;
+                }
+                insert(current, hi, lo, hash);
+                currentSize++;
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return currentSize + previousSize;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long memoryBytes() {
+            return (long) (current.length + previous.length) * Long.BYTES;
+        }
+
+        private boolean find(long[] table, long hi, long lo, long hash) {
+            int slot = (int) hash & mask;
+            while (true) {
+                long slotHi = table[slot * 2];
+                long slotLo = table[slot * 2 + 1];
+                if (slotHi == hi && slotLo == lo) {
+                    return true;
+                }
+                if (slotHi == 0 && slotLo == 0) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void insert(long[] table, long hi, long lo, long hash) {
+            int slot = (int) hash & mask;
+            while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot * 2] = hi;
+            table[slot * 2 + 1] = lo;
+        }
+    }
+}
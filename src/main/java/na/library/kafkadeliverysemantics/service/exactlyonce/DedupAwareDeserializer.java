@@ -0,0 +1,72 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import na.library.kafkadeliverysemantics.service.KafkaRecordHeaders;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Value deserializer that looks at the message-id header first and only parses the JSON payload
+ * for ids that are not known to be processed. Known duplicates deserialize to null and are
+ * discarded by {@link #isSkippedDuplicate}, so a replay after a crash costs a header lookup
+ * per record instead of a full parse.
+ * Only the processed-message cache is consulted; it holds committed ids only, so a hit is
+ * always a real duplicate and everything else goes through the normal dedup path.
+ * Only records from the direct producers carry the Message id in the header and can be skipped here.
+ * Records relayed from the outbox carry an "outbox-" event id instead, which never matches a
+ * processed Message id, so they are always parsed and deduplicated after deserialization.
+ */
+@Component
+@Profile("exactly-once")
+public class DedupAwareDeserializer implements Deserializer<Object> {
+
+    private final JsonDeserializer<Object> delegate = new JsonDeserializer<>();
+    private final ProcessedMessageCache processedMessages;
+    private final Counter skipped;
+
+    public DedupAwareDeserializer(ProcessedMessageCache processedMessages, MeterRegistry meterRegistry) {
+        this.processedMessages = processedMessages;
+        this.skipped = meterRegistry.counter("dedup.skipped.before-parse");
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        delegate.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return delegate.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        String messageId = KafkaRecordHeaders.lastString(headers, KafkaRecordHeaders.MESSAGE_ID);
+        if (messageId != null && processedMessages.contains(messageId)) {
+            skipped.increment();
+            return null;
+        }
+        return delegate.deserialize(topic, headers, data);
+    }
+
+    /**
+     * Record filter for containers using this deserializer: drops records whose payload was skipped.
+     * A null value that failed to deserialize is not a duplicate and is left to the quarantine.
+     */
+    public static boolean isSkippedDuplicate(Object value, Headers headers) {
+        return value == null && headers.lastHeader(KafkaRecordHeaders.MESSAGE_ID) != null
+                && headers.lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) == null;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
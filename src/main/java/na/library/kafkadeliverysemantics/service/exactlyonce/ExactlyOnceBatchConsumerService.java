@@ -0,0 +1,140 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.entity.ProcessedMessage;
+import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch variant of {@link ExactlyOnceConsumerService}: one existence query, one batched insert
+ * and one commit per poll instead of per record.
+ */
+@Service
+@Profile("exactly-once")
+@ConditionalOnProperty(name = "consumer.exactlyonce.mode", havingValue = "batch")
+@RequiredArgsConstructor
+@Slf4j
+public class ExactlyOnceBatchConsumerService {
+
+    private final ProcessedMessageCache processedMessages;
+    private final PartitionDedupState partitionDedupState;
+    private final ProcessedMessageBloomFilter bloomFilter;
+    private final MessageProcessingRepository messageRepository;
+    private final TransactionTemplate dbTransactionTemplate;
+
+    @KafkaListener(topics = "exactly-once-topic", groupId = "${consumer.exactlyonce.group.id}", containerFactory = "exactlyOnceBatchContainerFactory")
+    @Transactional("kafkaTransactionManager")
+    public void consume(List<Message> messages, Acknowledgment acknowledgment,
+                        @Header(KafkaHeaders.RECEIVED_TOPIC) List<String> topics,
+                        @Header(KafkaHeaders.RECEIVED_PARTITION) List<Integer> partitions) {
+        List<String> topicPartitions = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            topicPartitions.add(topics.get(i) + "-" + partitions.get(i));
+        }
+        try {
+            List<String> applied = dbTransactionTemplate.execute(status -> applyBatch(messages, topicPartitions, false));
+            remember(messages, topicPartitions, applied);
+            log.info("Batch of {} messages committed, {} newly processed", messages.size(), applied.size());
+        } catch (RuntimeException e) {
+            // Preserve per-record semantics: redo the poll one record at a time, committing each,
+            // and report the first record that still fails so the error handler retries from there.
+            // The most common batch failure is a primary-key violation on an id another instance recorded
+            // after a bloom negative, so the fallback checks every id against the database.
+            log.warn("Batch of {} messages failed, falling back to per-record processing", messages.size(), e);
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                List<Message> single = List.of(message);
+                List<String> singlePartition = List.of(topicPartitions.get(i));
+                try {
+                    remember(single, singlePartition, dbTransactionTemplate.execute(status -> applyBatch(single, singlePartition, true)));
+                } catch (DataIntegrityViolationException duplicate) {
+                    // Recorded concurrently by another instance; its transaction rolled back, so nothing was applied
+                    log.info("Message already processed, skipping: {}", message.getId());
+                    processedMessages.add(message.getId());
+                } catch (RuntimeException recordFailure) {
+                    throw new BatchListenerFailedException("Failed to process message " + message.getId(), recordFailure, i);
+                }
+            }
+        }
+        acknowledgment.acknowledge();
+    }
+
+    /**
+     * Processes the messages whose ids are not yet recorded and records them.
+     * Must run inside a database transaction; ids are flushed as one JDBC batch on commit.
+     *
+     * @param checkAll Look up every id, not only those the bloom filter might have seen
+     * @return Ids processed by this call
+     */
+    private List<String> applyBatch(List<Message> messages, List<String> topicPartitions, boolean checkAll) {
+        // Redeliveries can repeat an id within one poll; keep the first occurrence
+        Map<String, Integer> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < messages.size(); i++) {
+            String messageId = messages.get(i).getId();
+            if (!partitionDedupState.contains(topicPartitions.get(i), messageId) && !processedMessages.contains(messageId)) {
+                candidates.putIfAbsent(messageId, i);
+            }
+        }
+
+        // Only ids the bloom filter might have seen need the IN (...) lookup; a negative can still be an id
+        // another instance recorded, which the primary key rejects on commit
+        List<String> maybeProcessed = candidates.keySet().stream()
+                .filter(messageId -> checkAll || bloomFilter.mightContain(messageId))
+                .toList();
+        Set<String> existing = maybeProcessed.isEmpty()
+                ? Set.of()
+                : new HashSet<>(messageRepository.findExistingMessageIds(maybeProcessed));
+
+        long now = System.currentTimeMillis();
+        List<ProcessedMessage> records = new ArrayList<>();
+        List<String> applied = new ArrayList<>();
+        candidates.forEach((messageId, index) -> {
+            if (existing.contains(messageId)) {
+                log.info("Message already processed, skipping: {}", messageId);
+                return;
+            }
+            processMessage(messages.get(index));
+            records.add(new ProcessedMessage(messageId, now, topicPartitions.get(index)));
+            applied.add(messageId);
+        });
+
+        messageRepository.saveAll(records);
+        return applied;
+    }
+
+    private void remember(List<Message> messages, List<String> topicPartitions, List<String> applied) {
+        Set<String> appliedIds = new HashSet<>(applied);
+        for (int i = 0; i < messages.size(); i++) {
+            String messageId = messages.get(i).getId();
+            if (appliedIds.contains(messageId)) {
+                bloomFilter.put(messageId);
+                processedMessages.add(messageId);
+                partitionDedupState.add(topicPartitions.get(i), messageId);
+            }
+        }
+    }
+
+    private void processMessage(Message message) {
+        // Implement your business logic here
+        log.info("Processing message with ID: {}", message.getId());
+    }
+}
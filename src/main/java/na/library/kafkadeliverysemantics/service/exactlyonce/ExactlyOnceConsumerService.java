@@ -5,72 +5,131 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import na.library.kafkadeliverysemantics.entity.ProcessedMessage;
 import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
-
-import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 @Profile("exactly-once")
+@ConditionalOnProperty(name = "consumer.exactlyonce.mode", havingValue = "record", matchIfMissing = true)
 @RequiredArgsConstructor
 @Slf4j
 public class ExactlyOnceConsumerService {
 
-    // Simple in-memory deduplication store (should use a database in production)
-    private final ConcurrentHashMap<String, Boolean> processedMessages = new ConcurrentHashMap<>();
+    // Bounded in-memory deduplication cache in front of the database
+    private final ProcessedMessageCache processedMessages;
+
+    // Recent ids of the partitions assigned to this instance, warmed on rebalance
+    private final PartitionDedupState partitionDedupState;
+
+    // Probabilistic filter; ids it has never seen take the plain insert path
+    private final ProcessedMessageBloomFilter bloomFilter;
     
     // In a real application, you would use a transactional database for storing processed IDs
     private final MessageProcessingRepository messageRepository;
 
-    @KafkaListener(topics = "exactly-once-topic", groupId = "${consumer.exactlyonce.group.id}", containerFactory = "exactlyOnceContainerFactory")
+    private final TransactionTemplate dbTransactionTemplate;
+
+    // portable: INSERT ... SELECT ... WHERE NOT EXISTS; on-conflict: INSERT ... ON CONFLICT DO NOTHING (PostgreSQL)
+    @Value("${consumer.exactlyonce.dedup.insert:portable}")
+    private String insertStrategy;
+
+    @KafkaListener(topics = "exactly-once-topic", groupId = "${consumer.exactlyonce.group.id}", containerFactory = "exactlyOnceContainerFactory",
+            autoStartup = "#{!${consumer.parallel.enabled:false}}")
     @Transactional("kafkaTransactionManager") // Use the same transaction manager as the producer
-    public void consume(Message message, Acknowledgment acknowledgment) {
+    public void consume(Message message, Acknowledgment acknowledgment,
+                        @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+                        @Header(KafkaHeaders.RECEIVED_PARTITION) int partition) {
         String messageId = message.getId();
         
         try {
-            // Check if this message has already been processed (deduplication)
-            if (isMessageAlreadyProcessed(messageId)) {
+            if (processOnce(message, topic + "-" + partition)) {
+                log.info("Message processed and committed: {}", messageId);
+            } else {
                 log.info("Message already processed, skipping: {}", messageId);
-                acknowledgment.acknowledge();
-                return;
             }
-            
-            log.info("Processing message in transaction: {}", message);
-            
-            // Process the message with your business logic
-            processMessage(message);
-            
-            // Mark the message as processed in the same transaction
-            markMessageAsProcessed(messageId);
-            
+
             // Commit the offset as part of the transaction
             acknowledgment.acknowledge();
-            
-            log.info("Message processed and committed: {}", messageId);
         } catch (Exception e) {
             log.error("Error processing message (transaction will be rolled back): {}", messageId, e);
             // The transaction will be rolled back, so the message will be redelivered
             throw e; // Re-throw to ensure transaction rollback
         }
     }
-    
-    private boolean isMessageAlreadyProcessed(String messageId) {
-        // First check the in-memory cache (fast)
-        if (processedMessages.containsKey(messageId)) {
+
+    /**
+     * Runs the business logic for a message unless its id is already recorded.
+     * Safe to call concurrently for different messages; the parallel consumer uses it from its workers.
+     *
+     * @param message The consumed message
+     * @param topicPartition "topic-partition" the message was consumed from
+     * @return true if the message was processed now, false if it was a duplicate
+     */
+    public boolean processOnce(Message message, String topicPartition) {
+        String messageId = message.getId();
+
+        // Ids seen recently on this instance need no database round trip at all
+        if (partitionDedupState.contains(topicPartition, messageId) || processedMessages.contains(messageId)) {
+            return false;
+        }
+
+        // Record the id and run the business logic in one database transaction,
+        // so a failure in either rolls back both and the message is redelivered
+        Boolean applied = dbTransactionTemplate.execute(status -> {
+            if (!recordIfAbsent(messageId, topicPartition, status)) {
+                return false;
+            }
+            log.info("Processing message in transaction: {}", message);
+            processMessage(message);
             return true;
+        });
+
+        if (!Boolean.TRUE.equals(applied)) {
+            processedMessages.add(messageId);
+            return false;
         }
-        
-        // Then check the persistent store
-        return messageRepository.existsByMessageId(messageId);
+
+        // The id is committed; remember it locally
+        bloomFilter.put(messageId);
+        processedMessages.add(messageId);
+        partitionDedupState.add(topicPartition, messageId);
+        return true;
     }
     
-    private void markMessageAsProcessed(String messageId) {
-        // Update both in-memory cache and persistent store
-        processedMessages.put(messageId, true);
-        messageRepository.save(new ProcessedMessage(messageId, System.currentTimeMillis()));
+    /**
+     * Inserts the id into processed_messages unless it is already there.
+     * The affected row count replaces the separate exists query and the SELECT issued by save().
+     *
+     * @return true if the id was new
+     */
+    private boolean recordIfAbsent(String messageId, String topicPartition, TransactionStatus status) {
+        long now = System.currentTimeMillis();
+        try {
+            if (!bloomFilter.mightContain(messageId)) {
+                // Not seen by this instance: skip the NOT EXISTS read and issue a bare INSERT (ProcessedMessage
+                // is Persistable). Another instance may still have recorded the id, which the primary key catches.
+                messageRepository.saveAndFlush(new ProcessedMessage(messageId, now, topicPartition));
+                return true;
+            }
+            int inserted = "on-conflict".equals(insertStrategy)
+                    ? messageRepository.insertOnConflictDoNothing(messageId, now, topicPartition)
+                    : messageRepository.insertIfAbsent(messageId, now, topicPartition);
+            return inserted == 1;
+        } catch (DataIntegrityViolationException e) {
+            // The id is already recorded, by another instance or a concurrent insert
+            status.setRollbackOnly();
+            return false;
+        }
     }
     
     private void processMessage(Message message) {
@@ -0,0 +1,88 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.entity.PartitionOffset;
+import na.library.kafkadeliverysemantics.repository.PartitionOffsetRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Exactly-once consumer that stores the next offset per topic-partition instead of one row per message.
+ * The offset row is updated in the same database transaction as the business changes and the
+ * consumer seeks to it on assignment, so state is O(partitions) and each poll costs one update per partition.
+ * Kafka's committed offsets are still advanced but are only a hint; the database is authoritative.
+ */
+@Service
+@Profile("exactly-once")
+@ConditionalOnProperty(name = "consumer.exactlyonce.mode", havingValue = "offset")
+@RequiredArgsConstructor
+@Slf4j
+public class ExactlyOnceOffsetConsumerService implements ConsumerSeekAware {
+
+    private final PartitionOffsetRepository offsetRepository;
+    private final TransactionTemplate dbTransactionTemplate;
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        List<String> ids = assignments.keySet().stream().map(TopicPartition::toString).toList();
+        for (PartitionOffset stored : offsetRepository.findAllById(ids)) {
+            log.info("Seeking {} to stored offset {}", stored.getTopicPartition(), stored.getNextOffset());
+            callback.seek(stored.getTopic(), stored.getPartition(), stored.getNextOffset());
+        }
+    }
+
+    @KafkaListener(topics = "exactly-once-topic", groupId = "${consumer.exactlyonce.group.id}", containerFactory = "exactlyOnceBatchContainerFactory")
+    public void consume(List<ConsumerRecord<String, Message>> records, Acknowledgment acknowledgment) {
+        dbTransactionTemplate.executeWithoutResult(status -> apply(records));
+        acknowledgment.acknowledge();
+    }
+
+    private void apply(List<ConsumerRecord<String, Message>> records) {
+        Map<TopicPartition, List<ConsumerRecord<String, Message>>> byPartition = records.stream()
+                .collect(Collectors.groupingBy(r -> new TopicPartition(r.topic(), r.partition()),
+                        LinkedHashMap::new, Collectors.toList()));
+
+        Map<String, PartitionOffset> stored = offsetRepository.findAllById(
+                        byPartition.keySet().stream().map(TopicPartition::toString).toList())
+                .stream()
+                .collect(Collectors.toMap(PartitionOffset::getTopicPartition, Function.identity()));
+
+        byPartition.forEach((topicPartition, partitionRecords) -> {
+            PartitionOffset offset = stored.computeIfAbsent(topicPartition.toString(), id ->
+                    new PartitionOffset(id, topicPartition.topic(), topicPartition.partition(), 0L));
+
+            for (ConsumerRecord<String, Message> record : partitionRecords) {
+                // Records below the stored offset were applied before a rebalance or a rollback of the Kafka commit
+                if (record.offset() < offset.getNextOffset()) {
+                    log.info("Offset {} of {} already applied, skipping", record.offset(), topicPartition);
+                    continue;
+                }
+                processMessage(record.value());
+                offset.setNextOffset(record.offset() + 1);
+            }
+        });
+
+        // One row per partition in the poll, committed with the business changes
+        offsetRepository.saveAll(stored.values());
+    }
+
+    private void processMessage(Message message) {
+        // Implement your business logic here
+        log.info("Processing message with ID: {}", message.getId());
+    }
+}
@@ -0,0 +1,45 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.service.parallel.KeyOrderedParallelProcessor;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Exactly-once consumer that processes a partition's records in parallel, ordered per key.
+ * Each record is deduplicated and processed in its own database transaction by
+ * {@link ExactlyOnceConsumerService#processOnce}; offsets are committed up to the first unfinished
+ * record, and records redelivered after a failure are recognised as duplicates.
+ */
+@Service
+@Profile("exactly-once")
+// Builds on the record-mode consumer service
+@ConditionalOnExpression("${consumer.parallel.enabled:false} and '${consumer.exactlyonce.mode:record}' == 'record'")
+@RequiredArgsConstructor
+@Slf4j
+public class ExactlyOnceParallelConsumerService {
+
+    private final KeyOrderedParallelProcessor parallelProcessor;
+    private final ExactlyOnceConsumerService consumerService;
+
+    // Receives records that still fail after the processor's retries
+    private final DeadLetterPublishingRecoverer exactlyOnceDeadLetterRecoverer;
+
+    @KafkaListener(topics = "exactly-once-topic", groupId = "${consumer.exactlyonce.group.id}", containerFactory = "exactlyOnceParallelContainerFactory")
+    public void consume(List<ConsumerRecord<String, Message>> records, Consumer<?, ?> consumer) {
+        parallelProcessor.processAndCommit(records, consumer, record -> {
+            if (!consumerService.processOnce(record.value(), record.topic() + "-" + record.partition())) {
+                log.info("Message already processed, skipping: {}", record.value().getId());
+            }
+        }, exactlyOnceDeadLetterRecoverer);
+    }
+}
@@ -1,6 +1,8 @@
 package na.library.kafkadeliverysemantics.service.exactlyonce;
 
 import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.service.KafkaRecordHeaders;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Profile;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -59,7 +61,7 @@ public class ExactlyOnceProducerService {
 
         try {
             // Send synchronously to ensure transactional behavior
-            SendResult<String, Object> result = kafkaTemplate.send(TOPIC, messageId, message)
+            SendResult<String, Object> result = kafkaTemplate.send(createRecord(message))
                     .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
             log.info("Message sent successfully in transaction: {}, offset: {}",
@@ -101,7 +103,7 @@ public class ExactlyOnceProducerService {
                 Message message = createMessage(messageId, content);
 
                 // Send but don't wait for result of each individual message
-                CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(TOPIC, messageId, message);
+                CompletableFuture<SendResult<String, Object>> future = kafkaTemplate.send(createRecord(message));
                 future.whenComplete((result, ex) -> handleSendResult(messageId, result, ex));
 
                 log.debug("Message queued in transaction: {}", messageId);
@@ -133,6 +135,19 @@ public class ExactlyOnceProducerService {
                 .build();
     }
 
+    /**
+     * Creates the record for a message, keyed by its ID and carrying the ID in a header
+     * so consumers can skip duplicates before parsing the payload.
+     *
+     * @param message The message to send
+     * @return The producer record
+     */
+    private ProducerRecord<String, Object> createRecord(Message message) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(TOPIC, message.getId(), message);
+        KafkaRecordHeaders.addString(record.headers(), KafkaRecordHeaders.MESSAGE_ID, message.getId());
+        return record;
+    }
+
     /**
      * Handles the result of asynchronous message sending.
      * This is used for batch messages where we don't need to wait for each result.
@@ -0,0 +1,102 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recently processed ids, kept per assigned partition.
+ * On assignment the partition's most recent ids are bulk-loaded, so redeliveries after a rebalance
+ * hit memory instead of the database; on revocation the partition's state is dropped.
+ * The per-partition sets are synchronized because the parallel consumer touches one partition
+ * from several worker threads. Nothing inside those sections blocks, so virtual threads are never
+ * pinned for long.
+ */
+@Component
+@Profile("exactly-once")
+@Slf4j
+public class PartitionDedupState implements ConsumerAwareRebalanceListener {
+
+    private final MessageProcessingRepository messageRepository;
+    private final Map<String, Set<String>> partitions = new ConcurrentHashMap<>();
+    private final Timer warmUpDuration;
+
+    // Ids kept per partition, and loaded on assignment
+    @Value("${consumer.exactlyonce.dedup.partition-capacity:10000}")
+    private int partitionCapacity;
+
+    public PartitionDedupState(MessageProcessingRepository messageRepository, MeterRegistry meterRegistry) {
+        this.messageRepository = messageRepository;
+        this.warmUpDuration = Timer.builder("dedup.partition.warmup")
+                .description("Time to load recent ids for a newly assigned partition")
+                .register(meterRegistry);
+        Gauge.builder("dedup.partition.assigned", partitions, Map::size)
+                .register(meterRegistry);
+    }
+
+    public boolean contains(String topicPartition, String messageId) {
+        Set<String> ids = partitions.get(topicPartition);
+        return ids != null && ids.contains(messageId);
+    }
+
+    public void add(String topicPartition, String messageId) {
+        Set<String> ids = partitions.get(topicPartition);
+        if (ids != null) {
+            ids.add(messageId);
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> assigned) {
+        // With the cooperative-sticky assignor this only contains partitions that actually moved
+        for (TopicPartition topicPartition : assigned) {
+            String key = topicPartition.toString();
+            Set<String> ids = newBoundedSet();
+            warmUpDuration.record(() -> {
+                List<String> recent = messageRepository.findRecentMessageIds(key, Limit.of(partitionCapacity));
+                // Oldest first, so the bounded set evicts the oldest ids first
+                for (int i = recent.size() - 1; i >= 0; i--) {
+                    ids.add(recent.get(i));
+                }
+            });
+            partitions.put(key, ids);
+            log.info("Warmed dedup state for {} with {} ids", key, ids.size());
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        revoked.forEach(topicPartition -> partitions.remove(topicPartition.toString()));
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+        lost.forEach(topicPartition -> partitions.remove(topicPartition.toString()));
+    }
+
+    private Set<String> newBoundedSet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > partitionCapacity;
+            }
+        }));
+    }
+}
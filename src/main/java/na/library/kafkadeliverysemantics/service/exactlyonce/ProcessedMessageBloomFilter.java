@@ -0,0 +1,159 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the ids in processed_messages.
+ * It only knows the ids loaded at startup and the ids this instance recorded since, so a negative
+ * answer does not rule out that another instance has processed the id in the meantime (e.g. before
+ * a rebalance). A negative only lets the caller skip the read; the insert must stay guarded by the
+ * primary key. A positive answer may be a false positive and still goes to the database.
+ * The filter is rebuilt from processed_messages on startup; until then every id is a possible duplicate.
+ */
+@Component
+@Profile("exactly-once")
+@Slf4j
+public class ProcessedMessageBloomFilter {
+
+    private static final int REBUILD_PAGE_SIZE = 10_000;
+
+    private final MessageProcessingRepository messageRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${consumer.exactlyonce.dedup.bloom.enabled:false}")
+    private boolean enabled;
+
+    @Value("${consumer.exactlyonce.dedup.bloom.expected-insertions:10000000}")
+    private long expectedInsertions;
+
+    @Value("${consumer.exactlyonce.dedup.bloom.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private AtomicLongArray bits;
+    private long bitCount;
+    private int hashFunctions;
+    private final AtomicLong setBits = new AtomicLong();
+    private volatile boolean ready;
+
+    private Counter negatives;
+    private Counter positives;
+
+    public ProcessedMessageBloomFilter(MessageProcessingRepository messageRepository, MeterRegistry meterRegistry) {
+        this.messageRepository = messageRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        // Standard sizing: m = -n ln(p) / ln(2)^2 bits and k = m / n ln(2) hash functions
+        bitCount = Math.max(64, (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        registerMetrics();
+
+        long loaded = 0;
+        String after = "";
+        List<String> page;
+        do {
+            page = messageRepository.findMessageIdsAfter(after, Limit.of(REBUILD_PAGE_SIZE));
+            page.forEach(this::put);
+            loaded += page.size();
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1);
+            }
+        } while (page.size() == REBUILD_PAGE_SIZE);
+
+        ready = true;
+        log.info("Rebuilt processed message bloom filter: {} ids, {} bits, {} hash functions", loaded, bitCount, hashFunctions);
+    }
+
+    /**
+     * @param messageId Message id to check
+     * @return false only if the id was definitely never processed
+     */
+    public boolean mightContain(String messageId) {
+        if (!ready) {
+            return true;
+        }
+        long hash = hash(messageId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                negatives.increment();
+                return false;
+            }
+        }
+        positives.increment();
+        return true;
+    }
+
+    public void put(String messageId) {
+        if (bits == null) {
+            return;
+        }
+        long hash = hash(messageId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long previous = bits.getAndAccumulate(word, mask, (current, m) -> current | m);
+            if ((previous & mask) == 0) {
+                setBits.incrementAndGet();
+            }
+        }
+    }
+
+    // Estimated false-positive rate at the current fill level: (set bits / m) ^ k
+    private double currentFalsePositiveRate() {
+        return Math.pow((double) setBits.get() / bitCount, hashFunctions);
+    }
+
+    private void registerMetrics() {
+        negatives = meterRegistry.counter("dedup.bloom.lookups", "result", "negative");
+        positives = meterRegistry.counter("dedup.bloom.lookups", "result", "maybe");
+        Gauge.builder("dedup.bloom.size", this, filter -> filter.bitCount / 8.0)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("dedup.bloom.false-positive-rate", this, filter -> filter.falsePositiveRate)
+                .tag("kind", "configured")
+                .register(meterRegistry);
+        Gauge.builder("dedup.bloom.false-positive-rate", this, ProcessedMessageBloomFilter::currentFalsePositiveRate)
+                .tag("kind", "estimated")
+                .register(meterRegistry);
+    }
+
+    // 64-bit FNV-1a over the id, finished with a Murmur3 mix so both halves are usable as hashes
+    private static long hash(String messageId) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < messageId.length(); i++) {
+            h ^= messageId.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
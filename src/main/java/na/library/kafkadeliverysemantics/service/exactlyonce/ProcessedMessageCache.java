@@ -0,0 +1,12 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+/**
+ * In-memory front for the processed_messages table.
+ * A hit means the message was processed; a miss means nothing, the repository stays authoritative.
+ */
+public interface ProcessedMessageCache {
+
+    boolean contains(String messageId);
+
+    void add(String messageId);
+}
@@ -0,0 +1,81 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes processed_messages rows that are older than the topic retention.
+ * Kafka cannot redeliver a record it has already deleted, so an id older than retention.ms
+ * no longer protects against anything. The grace period covers records that outlive
+ * retention.ms until their segment is rolled and deleted.
+ */
+@Service
+@Profile("exactly-once")
+@Slf4j
+public class ProcessedMessageRetentionService {
+
+    private final MessageProcessingRepository messageRepository;
+    private final Counter purgedRows;
+    private final Timer purgeDuration;
+    private final AtomicLong tableSize = new AtomicLong();
+
+    @Value("${kafka.topic.retention-ms:604800000}")
+    private long topicRetentionMs;
+
+    @Value("${consumer.exactlyonce.dedup.retention.grace:1d}")
+    private Duration grace;
+
+    @Value("${consumer.exactlyonce.dedup.retention.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${consumer.exactlyonce.dedup.retention.max-chunks-per-run:100}")
+    private int maxChunksPerRun;
+
+    public ProcessedMessageRetentionService(MessageProcessingRepository messageRepository, MeterRegistry meterRegistry) {
+        this.messageRepository = messageRepository;
+        this.purgedRows = meterRegistry.counter("dedup.retention.purged");
+        this.purgeDuration = Timer.builder("dedup.retention.duration")
+                .description("Duration of one processed_messages expiry run")
+                .register(meterRegistry);
+        Gauge.builder("dedup.table.size", tableSize, AtomicLong::get)
+                .description("Rows in processed_messages after the last expiry run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${consumer.exactlyonce.dedup.retention.interval:PT1M}")
+    public void purgeExpiredMessages() {
+        purgeDuration.record(() -> {
+            long cutoff = System.currentTimeMillis() - topicRetentionMs - grace.toMillis();
+            int purged = 0;
+            for (int chunk = 0; chunk < maxChunksPerRun; chunk++) {
+                List<String> ids = messageRepository.findExpiredMessageIds(cutoff, Limit.of(chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                messageRepository.deleteAllByIdInBatch(ids);
+                purged += ids.size();
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+            if (purged > 0) {
+                purgedRows.increment(purged);
+                log.info("Purged {} processed message ids older than {}", purged, cutoff);
+            }
+            tableSize.set(messageRepository.count());
+        });
+    }
+}
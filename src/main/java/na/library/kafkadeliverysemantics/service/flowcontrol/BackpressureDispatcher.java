@@ -0,0 +1,308 @@
+package na.library.kafkadeliverysemantics.service.flowcontrol;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.config.WorkerThreads;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs listener work asynchronously while keeping the consumer within what the workers can absorb.
+ * Records are handed to key-ordered worker lanes and the listener returns at once, so the container
+ * keeps polling and the member is never kicked out for exceeding max.poll.interval.ms.
+ * In-flight work (queued or running) is counted per partition: a partition above the high-water mark
+ * is paused on its container and resumed once it drains below the low-water mark.
+ * Records are acknowledged when their work is done; the container must use asyncAcks so
+ * out-of-order acknowledgements are only committed once the gaps before them are filled.
+ * Work that still fails after its attempts goes to a recoverer (normally a dead-letter publisher)
+ * and is acknowledged. The dispatcher must be the container's rebalance listener: on revocation it
+ * waits a bounded time for the partition's work, then drops what is left unacknowledged for the
+ * next owner to redeliver.
+ */
+@Component
+@ConditionalOnProperty(name = "consumer.flow-control.enabled", havingValue = "true")
+@Slf4j
+public class BackpressureDispatcher implements ConsumerAwareRebalanceListener {
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final MeterRegistry meterRegistry;
+    private final Map<TopicPartition, PartitionFlow> partitions = new ConcurrentHashMap<>();
+    private final AtomicInteger pausedPartitions = new AtomicInteger();
+    private final Timer pausedDuration;
+    private final Counter retries;
+    private final Counter recovered;
+
+    @Value("${consumer.flow-control.high-watermark:1000}")
+    private int highWatermark;
+
+    @Value("${consumer.flow-control.low-watermark:200}")
+    private int lowWatermark;
+
+    @Value("${consumer.flow-control.workers:16}")
+    private int workers;
+
+    // Attempts per record, including the first one
+    @Value("${consumer.flow-control.max-attempts:4}")
+    private int maxAttempts;
+
+    // Failed work is retried in its lane after this delay; the lane holds later records of the key meanwhile
+    @Value("${consumer.flow-control.retry-backoff:1s}")
+    private Duration retryBackoff;
+
+    // How long a revocation waits for the partition's queued and running work; must stay well below
+    // max.poll.interval.ms since the consumer thread blocks meanwhile
+    @Value("${consumer.flow-control.revoke-timeout:10s}")
+    private Duration revokeTimeout;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final List<ExecutorService> lanes = new ArrayList<>();
+
+    public BackpressureDispatcher(KafkaListenerEndpointRegistry registry, MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.meterRegistry = meterRegistry;
+        this.pausedDuration = Timer.builder("flowcontrol.paused.duration")
+                .description("Time a partition stayed paused by flow control")
+                .register(meterRegistry);
+        this.retries = meterRegistry.counter("flowcontrol.retries");
+        this.recovered = meterRegistry.counter("flowcontrol.recovered");
+        Gauge.builder("flowcontrol.paused.partitions", pausedPartitions, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startLanes() {
+        ThreadFactory threadFactory = WorkerThreads.factory("flow-control-", virtualThreads);
+        for (int lane = 0; lane < workers; lane++) {
+            lanes.add(Executors.newSingleThreadExecutor(threadFactory));
+        }
+    }
+
+    @PreDestroy
+    void stopLanes() {
+        lanes.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * Queues the work for a record and returns immediately.
+     *
+     * @param listenerId Id of the listener container consuming the record, used to pause its partition
+     * @param record The consumed record
+     * @param acknowledgment Acknowledged once the work has completed
+     * @param work The processing for the record
+     * @param recoverer Receives the record once its work has failed on every attempt
+     */
+    public void dispatch(String listenerId, ConsumerRecord<?, ?> record, Acknowledgment acknowledgment, Runnable work,
+                         ConsumerRecordRecoverer recoverer) {
+        TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+        PartitionFlow flow = partitions.computeIfAbsent(topicPartition, partition -> newFlow(listenerId, partition));
+
+        if (flow.inFlight.incrementAndGet() >= highWatermark) {
+            flow.pauseIfAbove(highWatermark, () -> {
+                container(listenerId).pausePartition(topicPartition);
+                pausedPartitions.incrementAndGet();
+                log.info("Paused {} with {} records in flight", topicPartition, flow.inFlight.get());
+            });
+        }
+
+        Object orderingKey = record.key() != null ? record.key() : topicPartition;
+        lanes.get(Math.floorMod(orderingKey.hashCode(), lanes.size())).execute(() -> {
+            try {
+                if (!flow.revoked && runOrRecover(flow, record, work, recoverer)) {
+                    acknowledgment.acknowledge();
+                }
+            } finally {
+                if (flow.inFlight.decrementAndGet() <= lowWatermark && !flow.revoked) {
+                    flow.resumeIfAtMost(lowWatermark, pausedNanos -> {
+                        container(listenerId).resumePartition(topicPartition);
+                        pausedPartitions.decrementAndGet();
+                        pausedDuration.record(Duration.ofNanos(pausedNanos));
+                        log.info("Resumed {} after {} ms", topicPartition, Duration.ofNanos(pausedNanos).toMillis());
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the revoked partitions' work so their acknowledgements are committed with the revocation,
+     * then drops whatever is still queued.
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+        long deadline = System.nanoTime() + revokeTimeout.toNanos();
+        for (TopicPartition topicPartition : revoked) {
+            PartitionFlow flow = partitions.get(topicPartition);
+            while (flow != null && flow.inFlight.get() > 0 && System.nanoTime() < deadline) {
+                if (!sleep(10)) {
+                    break;
+                }
+            }
+        }
+        drop(revoked);
+    }
+
+    // The partitions already belong to another member, so their work is dropped without waiting
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+        drop(lost);
+    }
+
+    // At-least-once: the record is acknowledged only once its work succeeded or the recoverer took it.
+    // Returns false when the partition was revoked first, leaving the record to its next owner.
+    private boolean runOrRecover(PartitionFlow flow, ConsumerRecord<?, ?> record, Runnable work,
+                                 ConsumerRecordRecoverer recoverer) {
+        RuntimeException failure = null;
+        for (int attempt = 1; attempt <= maxAttempts && !flow.revoked; attempt++) {
+            try {
+                work.run();
+                return true;
+            } catch (RuntimeException e) {
+                failure = e;
+                log.error("Failed to process record {}-{}@{} (attempt {} of {})", record.topic(), record.partition(),
+                        record.offset(), attempt, maxAttempts, e);
+                if (attempt < maxAttempts) {
+                    retries.increment();
+                    if (!sleep(retryBackoff.toMillis())) {
+                        return false;
+                    }
+                }
+            }
+        }
+        // Keep trying the recoverer (e.g. while the dead-letter topic is unavailable) until the partition moves
+        while (!flow.revoked) {
+            try {
+                recoverer.accept(record, failure);
+                recovered.increment();
+                return true;
+            } catch (RuntimeException e) {
+                log.error("Failed to recover record {}-{}@{}, retrying in {}", record.topic(), record.partition(),
+                        record.offset(), retryBackoff, e);
+                if (!sleep(retryBackoff.toMillis())) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void drop(Collection<TopicPartition> topicPartitions) {
+        for (TopicPartition topicPartition : topicPartitions) {
+            PartitionFlow flow = partitions.remove(topicPartition);
+            if (flow == null) {
+                continue;
+            }
+            flow.revoked = true;
+            meterRegistry.remove(flow.gauge);
+            // The container keeps paused partitions paused across reassignment, so release the pause here
+            flow.resumeIfAtMost(Integer.MAX_VALUE, pausedNanos -> {
+                container(flow.listenerId).resumePartition(topicPartition);
+                pausedPartitions.decrementAndGet();
+                pausedDuration.record(Duration.ofNanos(pausedNanos));
+            });
+            if (flow.inFlight.get() > 0) {
+                log.warn("Dropped {} records in flight for revoked {}", flow.inFlight.get(), topicPartition);
+            }
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private MessageListenerContainer container(String listenerId) {
+        MessageListenerContainer container = registry.getListenerContainer(listenerId);
+        if (container == null) {
+            throw new IllegalStateException("No listener container with id " + listenerId);
+        }
+        return container;
+    }
+
+    private PartitionFlow newFlow(String listenerId, TopicPartition topicPartition) {
+        AtomicInteger inFlight = new AtomicInteger();
+        Gauge gauge = Gauge.builder("flowcontrol.inflight", inFlight, AtomicInteger::get)
+                .description("Records queued or running for the partition")
+                .tag("partition", topicPartition.toString())
+                .register(meterRegistry);
+        return new PartitionFlow(listenerId, inFlight, gauge);
+    }
+
+    // Pause and resume re-check the in-flight count under one lock, so a resume racing a pause
+    // can never leave a drained partition paused
+    private static final class PartitionFlow {
+
+        private final String listenerId;
+        private final AtomicInteger inFlight;
+        private final Gauge gauge;
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean paused;
+        private long pausedAt;
+        // Set once the partition is revoked; its remaining work is skipped and left unacknowledged
+        private volatile boolean revoked;
+
+        PartitionFlow(String listenerId, AtomicInteger inFlight, Gauge gauge) {
+            this.listenerId = listenerId;
+            this.inFlight = inFlight;
+            this.gauge = gauge;
+        }
+
+        void pauseIfAbove(int highWatermark, Runnable pause) {
+            lock.lock();
+            try {
+                if (!paused && inFlight.get() >= highWatermark) {
+                    paused = true;
+                    pausedAt = System.nanoTime();
+                    pause.run();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void resumeIfAtMost(int lowWatermark, LongConsumer resume) {
+            lock.lock();
+            try {
+                if (paused && inFlight.get() <= lowWatermark) {
+                    paused = false;
+                    resume.accept(System.nanoTime() - pausedAt);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
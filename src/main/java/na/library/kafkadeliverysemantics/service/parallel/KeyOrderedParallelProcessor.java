@@ -0,0 +1,177 @@
+package na.library.kafkadeliverysemantics.service.parallel;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.config.WorkerThreads;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fans the records of one poll out to a pool of single-threaded worker lanes.
+ * Records with the same key always run on the same lane, in offset order; records with different
+ * keys of the same partition run in parallel, so an I/O-bound handler scales with the number of
+ * workers rather than the number of partitions. Records without a key are ordered per partition.
+ * The call returns once the whole poll has been handled.
+ * With {@link #processAndCommit}, a failing record is retried in its lane with exponential backoff and,
+ * once the attempts are used up, handed to a recoverer (normally a dead-letter publisher), so a poison
+ * record cannot hold its key back forever.
+ */
+@Component
+@ConditionalOnProperty(name = "consumer.parallel.enabled", havingValue = "true")
+@Slf4j
+public class KeyOrderedParallelProcessor {
+
+    @Value("${consumer.parallel.workers:16}")
+    private int workers;
+
+    // Attempts per record in processAndCommit, including the first one
+    @Value("${consumer.parallel.max-attempts:4}")
+    private int maxAttempts;
+
+    // Delay before the first retry, doubled for each further retry up to the maximum. All retries of a poll
+    // must fit in max.poll.interval.ms, since the poll waits for them.
+    @Value("${consumer.parallel.retry-backoff:1s}")
+    private Duration retryBackoff;
+
+    @Value("${consumer.parallel.max-retry-backoff:10s}")
+    private Duration maxRetryBackoff;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final List<ExecutorService> lanes = new ArrayList<>();
+
+    @PostConstruct
+    void startLanes() {
+        ThreadFactory threadFactory = WorkerThreads.factory("parallel-consumer-", virtualThreads);
+        for (int lane = 0; lane < workers; lane++) {
+            lanes.add(Executors.newSingleThreadExecutor(threadFactory));
+        }
+    }
+
+    @PreDestroy
+    void stopLanes() {
+        lanes.forEach(ExecutorService::shutdown);
+    }
+
+    /**
+     * Processes the poll, commits the contiguous completed prefix of every partition and seeks each
+     * partition with an unfinished record back to it, so it and everything after it are redelivered.
+     * A record that still fails after the last attempt goes to the recoverer and counts as done; only
+     * a failing recoverer leaves a record unfinished. Records after an unfinished one that did complete
+     * are processed again on redelivery.
+     */
+    public <V> void processAndCommit(List<ConsumerRecord<String, V>> records, Consumer<?, ?> consumer,
+                                     java.util.function.Consumer<ConsumerRecord<String, V>> handler,
+                                     ConsumerRecordRecoverer recoverer) {
+        OffsetTracker tracker = process(records, handler, maxAttempts, recoverer);
+        consumer.commitSync(tracker.committableOffsets());
+        tracker.firstIncompleteOffsets().forEach((partition, offset) -> {
+            log.warn("Redelivering {} from offset {}", partition, offset);
+            consumer.seek(partition, offset);
+        });
+    }
+
+    /**
+     * Processes the poll once, without retries; failed records are logged and left unfinished.
+     */
+    public <V> OffsetTracker process(List<ConsumerRecord<String, V>> records,
+                                     java.util.function.Consumer<ConsumerRecord<String, V>> handler) {
+        return process(records, handler, 1, null);
+    }
+
+    private <V> OffsetTracker process(List<ConsumerRecord<String, V>> records,
+                                      java.util.function.Consumer<ConsumerRecord<String, V>> handler,
+                                      int attempts, ConsumerRecordRecoverer recoverer) {
+        OffsetTracker tracker = new OffsetTracker();
+        Set<Object> failedKeys = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(records.size());
+
+        for (ConsumerRecord<String, V> record : records) {
+            tracker.register(record);
+            Object orderingKey = record.key() != null
+                    ? record.key()
+                    : new TopicPartition(record.topic(), record.partition());
+            ExecutorService lane = lanes.get(Math.floorMod(orderingKey.hashCode(), lanes.size()));
+            futures.add(CompletableFuture.runAsync(() -> {
+                // Once a record fails, later records of its key wait for the redelivery to keep key order
+                if (failedKeys.contains(orderingKey)) {
+                    return;
+                }
+                if (handle(record, handler, attempts, recoverer)) {
+                    tracker.complete(record);
+                } else {
+                    failedKeys.add(orderingKey);
+                }
+            }, lane));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        return tracker;
+    }
+
+    // Runs on the record's lane, so retrying holds back only the keys sharing that lane
+    private <V> boolean handle(ConsumerRecord<String, V> record, java.util.function.Consumer<ConsumerRecord<String, V>> handler,
+                               int attempts, ConsumerRecordRecoverer recoverer) {
+        long backoff = retryBackoff == null ? 0 : retryBackoff.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handler.accept(record);
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt < attempts) {
+                    log.warn("Failed to process record {}-{}@{} (attempt {} of {}), retrying in {} ms", record.topic(),
+                            record.partition(), record.offset(), attempt, attempts, backoff, e);
+                    if (!sleep(backoff)) {
+                        return false;
+                    }
+                    backoff = Math.min(backoff * 2, maxRetryBackoff.toMillis());
+                    continue;
+                }
+                log.error("Failed to process record {}-{}@{} after {} attempts", record.topic(), record.partition(),
+                        record.offset(), attempt, e);
+                return recover(record, e, recoverer);
+            }
+        }
+    }
+
+    private boolean recover(ConsumerRecord<?, ?> record, RuntimeException failure, ConsumerRecordRecoverer recoverer) {
+        if (recoverer == null) {
+            return false;
+        }
+        try {
+            recoverer.accept(record, failure);
+            return true;
+        } catch (RuntimeException e) {
+            log.error("Failed to recover record {}-{}@{}, it will be redelivered", record.topic(), record.partition(),
+                    record.offset(), e);
+            return false;
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package na.library.kafkadeliverysemantics.service.parallel;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Tracks which offsets of one poll have been processed when records complete out of order.
+ * Only the contiguous completed prefix of each partition is committable; everything from the
+ * first unfinished offset on is redelivered.
+ */
+public class OffsetTracker {
+
+    private final Map<TopicPartition, ConcurrentSkipListSet<Long>> pending = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> highest = new ConcurrentHashMap<>();
+
+    /**
+     * @return Offsets to commit so that every record of the poll counts as consumed
+     */
+    public static Map<TopicPartition, OffsetAndMetadata> endOffsetsOf(List<? extends ConsumerRecord<?, ?>> records) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (ConsumerRecord<?, ?> record : records) {
+            offsets.merge(partitionOf(record), new OffsetAndMetadata(record.offset() + 1),
+                    (a, b) -> a.offset() >= b.offset() ? a : b);
+        }
+        return offsets;
+    }
+
+    void register(ConsumerRecord<?, ?> record) {
+        TopicPartition partition = partitionOf(record);
+        pending.computeIfAbsent(partition, p -> new ConcurrentSkipListSet<>()).add(record.offset());
+        highest.merge(partition, record.offset(), Math::max);
+    }
+
+    void complete(ConsumerRecord<?, ?> record) {
+        pending.get(partitionOf(record)).remove(record.offset());
+    }
+
+    /**
+     * @return Per partition, the offset after the contiguous completed prefix
+     */
+    public Map<TopicPartition, OffsetAndMetadata> committableOffsets() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        highest.forEach((partition, last) -> {
+            ConcurrentSkipListSet<Long> open = pending.get(partition);
+            offsets.put(partition, new OffsetAndMetadata(open.isEmpty() ? last + 1 : open.first()));
+        });
+        return offsets;
+    }
+
+    /**
+     * @return Per partition with unfinished records, the first offset that has to be redelivered
+     */
+    public Map<TopicPartition, Long> firstIncompleteOffsets() {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        pending.forEach((partition, open) -> {
+            if (!open.isEmpty()) {
+                offsets.put(partition, open.first());
+            }
+        });
+        return offsets;
+    }
+
+    private static TopicPartition partitionOf(ConsumerRecord<?, ?> record) {
+        return new TopicPartition(record.topic(), record.partition());
+    }
+}
@@ -0,0 +1,186 @@
+package na.library.kafkadeliverysemantics.service.quarantine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import na.library.kafkadeliverysemantics.entity.QuarantinedRecord;
+import na.library.kafkadeliverysemantics.repository.QuarantinedRecordRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Stores records whose value failed to deserialize, so the consumer can move past them.
+ * ErrorHandlingDeserializer turns the failure into a header; record listeners reach this class through
+ * the container error handler ({@link #accept}), retry-topic listeners through their dead-letter
+ * recoverer, batch listeners through their record filter ({@link #quarantineIfPoisoned}).
+ * Quarantined records keep their raw bytes and can be replayed to their original topic once the
+ * cause is fixed. Batch and parallel listeners do not always commit past filtered records at the end
+ * of a poll, so the same record can come back after a rebalance or restart; storing is idempotent on
+ * topic, partition and offset.
+ */
+@Service
+@Slf4j
+public class QuarantineService implements ConsumerRecordRecoverer {
+
+    private static final LogAccessor LOGGER = new LogAccessor(QuarantineService.class);
+    private static final int SEND_TIMEOUT_SECONDS = 10;
+
+    private final QuarantinedRecordRepository repository;
+    private final KafkaTemplate<String, byte[]> replayTemplate;
+    private final MeterRegistry meterRegistry;
+
+    public QuarantineService(QuarantinedRecordRepository repository,
+                             @Qualifier("quarantineReplayKafkaTemplate") KafkaTemplate<String, byte[]> replayTemplate,
+                             MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.replayTemplate = replayTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Recoverer for the container error handlers. Deserialization failures are quarantined;
+     * anything else has exhausted its retries and is logged, as the default recoverer would.
+     */
+    @Override
+    public void accept(ConsumerRecord<?, ?> record, Exception exception) {
+        DeserializationException deserialization = deserializationFailureOf(record, exception);
+        if (deserialization != null) {
+            quarantine(record, deserialization);
+        } else {
+            log.error("Giving up on record {}-{}@{} after retries", record.topic(), record.partition(), record.offset(), exception);
+        }
+    }
+
+    /**
+     * @return true if the failure comes from the record's value not deserializing, so it belongs in the quarantine
+     */
+    public boolean isDeserializationFailure(ConsumerRecord<?, ?> record, Exception exception) {
+        return deserializationFailureOf(record, exception) != null;
+    }
+
+    /**
+     * Record filter for batch listeners: quarantines the record if its value failed to deserialize.
+     *
+     * @return true if the record was quarantined and must be skipped
+     */
+    public boolean quarantineIfPoisoned(ConsumerRecord<?, ?> record) {
+        if (record.value() != null) {
+            return false;
+        }
+        DeserializationException deserialization = SerializationUtils.getExceptionFromHeader(record,
+                SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOGGER);
+        if (deserialization == null) {
+            return false;
+        }
+        quarantine(record, deserialization);
+        return true;
+    }
+
+    public List<QuarantinedRecord> findPending(int limit) {
+        return repository.findByReplayedFalseOrderByIdDesc(Limit.of(limit));
+    }
+
+    /**
+     * Sends the raw bytes of a quarantined record back to its original topic.
+     *
+     * @return false if no record with this id exists
+     */
+    @Transactional("transactionManager")
+    public boolean replay(Long id) {
+        QuarantinedRecord quarantined = repository.findById(id).orElse(null);
+        if (quarantined == null) {
+            return false;
+        }
+        try {
+            replayTemplate.send(new ProducerRecord<>(quarantined.getTopic(), quarantined.getKey(), quarantined.getValue()))
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying quarantined record " + id, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Failed to replay quarantined record " + id, e);
+        }
+        quarantined.setReplayed(true);
+        quarantined.setReplayedAt(LocalDateTime.now());
+        meterRegistry.counter("quarantine.replayed", "topic", quarantined.getTopic()).increment();
+        log.info("Replayed quarantined record {} to {}", id, quarantined.getTopic());
+        return true;
+    }
+
+    private void quarantine(ConsumerRecord<?, ?> record, DeserializationException exception) {
+        if (repository.existsByTopicAndPartitionAndOffset(record.topic(), record.partition(), record.offset())) {
+            log.info("Record {}-{}@{} is already quarantined", record.topic(), record.partition(), record.offset());
+            return;
+        }
+        QuarantinedRecord quarantined = new QuarantinedRecord();
+        quarantined.setTopic(record.topic());
+        quarantined.setPartition(record.partition());
+        quarantined.setOffset(record.offset());
+        quarantined.setKey(keyOf(record));
+        quarantined.setValue(exception.getData());
+        Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+        quarantined.setException(cause.getClass().getName());
+        quarantined.setReason(abbreviate(cause.getMessage()));
+        quarantined.setQuarantinedAt(LocalDateTime.now());
+        try {
+            repository.saveAndFlush(quarantined);
+        } catch (DataIntegrityViolationException e) {
+            // Another consumer quarantined the same redelivered record in the meantime
+            log.info("Record {}-{}@{} is already quarantined", record.topic(), record.partition(), record.offset());
+            return;
+        }
+
+        meterRegistry.counter("quarantine.records", "topic", record.topic()).increment();
+        log.warn("Quarantined undeserializable record {}-{}@{} as {}", record.topic(), record.partition(),
+                record.offset(), quarantined.getId());
+    }
+
+    private static String keyOf(ConsumerRecord<?, ?> record) {
+        Object key = record.key();
+        if (key instanceof byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return key == null ? null : key.toString();
+    }
+
+    private static DeserializationException deserializationFailureOf(ConsumerRecord<?, ?> record, Exception exception) {
+        DeserializationException deserialization = findDeserializationException(exception);
+        if (deserialization == null) {
+            deserialization = SerializationUtils.getExceptionFromHeader(record,
+                    SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOGGER);
+        }
+        return deserialization;
+    }
+
+    private static DeserializationException findDeserializationException(Throwable exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            if (t instanceof DeserializationException deserialization) {
+                return deserialization;
+            }
+        }
+        return null;
+    }
+
+    private static String abbreviate(String message) {
+        if (message == null || message.length() <= 2000) {
+            return message;
+        }
+        return message.substring(0, 2000);
+    }
+}
@@ -0,0 +1,36 @@
+package na.library.kafkadeliverysemantics.config.atleastonce;
+
+import na.library.kafkadeliverysemantics.service.quarantine.QuarantineService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.retrytopic.DeadLetterPublishingRecovererFactory;
+import org.springframework.kafka.retrytopic.DestinationTopicResolver;
+import org.springframework.kafka.support.serializer.DeserializationException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AtLeastOnceRetryTopicSupportTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void deserializationFailureIsQuarantinedInsteadOfDeadLettered() {
+        QuarantineService quarantineService = mock(QuarantineService.class);
+        ObjectProvider<QuarantineService> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(quarantineService);
+        DeadLetterPublishingRecovererFactory factory = new DeadLetterPublishingRecovererFactory(mock(DestinationTopicResolver.class));
+        new AtLeastOnceRetryTopicSupport(provider).configureDeadLetterPublishingContainerFactory().accept(factory);
+
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("at-least-once-topic", 0, 7, "key", null);
+        DeserializationException failure = new DeserializationException("bad json", new byte[]{'{'}, false, null);
+        when(quarantineService.isDeserializationFailure(record, failure)).thenReturn(true);
+
+        DeadLetterPublishingRecoverer recoverer = factory.create("at-least-once-topic");
+        recoverer.accept(record, null, failure);
+
+        verify(quarantineService).accept(record, failure);
+    }
+}
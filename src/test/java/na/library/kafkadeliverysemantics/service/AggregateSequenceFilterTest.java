@@ -0,0 +1,37 @@
+package na.library.kafkadeliverysemantics.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AggregateSequenceFilterTest {
+
+    private final AggregateSequenceFilter filter = new AggregateSequenceFilter(new SimpleMeterRegistry(), 1_000);
+
+    @Test
+    void eventsOnOtherTopicsMayArriveOutOfSequence() {
+        ConsumerRecord<String, Object> updated = record("message-updated-topic", 2);
+        assertThat(filter.filter(updated)).isFalse();
+        filter.success(updated, null);
+
+        assertThat(filter.filter(record("message-created-topic", 1))).isFalse();
+    }
+
+    @Test
+    void replayedEventOnTheSameTopicIsDiscarded() {
+        ConsumerRecord<String, Object> updated = record("message-updated-topic", 3);
+        filter.success(updated, null);
+
+        assertThat(filter.filter(record("message-updated-topic", 3))).isTrue();
+        assertThat(filter.filter(record("message-updated-topic", 2))).isTrue();
+        assertThat(filter.filter(record("message-updated-topic", 5))).isFalse();
+    }
+
+    private static ConsumerRecord<String, Object> record(String topic, long sequence) {
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>(topic, 0, sequence, "aggregate-1", null);
+        KafkaRecordHeaders.addString(record.headers(), KafkaRecordHeaders.AGGREGATE_SEQUENCE, Long.toString(sequence));
+        return record;
+    }
+}
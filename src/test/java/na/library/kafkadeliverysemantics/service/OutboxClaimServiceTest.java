@@ -0,0 +1,158 @@
+package na.library.kafkadeliverysemantics.service;
+
+import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({OutboxClaimService.class, OutboxClaimServiceTest.ClockConfig.class})
+@ActiveProfiles("exactly-once")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxClaimServiceTest {
+
+    @Autowired
+    private OutboxClaimService claimService;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private MutableClock clock;
+
+    @AfterEach
+    void cleanUp() {
+        outboxRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentRelaysNeverClaimTheSameEvent() throws Exception {
+        for (int event = 0; event < 200; event++) {
+            outboxRepository.save(new OutboxEvent("aggregate-" + (event % 20), "Message", "MESSAGE_UPDATED", "{}"));
+        }
+
+        Map<Long, String> claims = new ConcurrentHashMap<>();
+        ExecutorService relays = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int relay = 0; relay < 4; relay++) {
+            String owner = "relay-" + relay;
+            results.add(relays.submit(() -> {
+                List<OutboxEvent> batch;
+                while (!(batch = claim(owner, 25, Duration.ofMinutes(1))).isEmpty()) {
+                    for (OutboxEvent event : batch) {
+                        String previousOwner = claims.putIfAbsent(event.getId(), owner);
+                        assertThat(previousOwner).as("event %s claimed twice", event.getId()).isNull();
+                    }
+                    outboxRepository.markAsProcessed(batch.stream().map(OutboxEvent::getId).toList(), owner, now());
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        relays.shutdown();
+
+        assertThat(claims).hasSize(200);
+    }
+
+    @Test
+    void expiredLeaseIsReclaimedByAnotherRelay() {
+        outboxRepository.save(new OutboxEvent("aggregate-1", "Message", "MESSAGE_CREATED", "{}"));
+
+        assertThat(claimService.claimBatch("relay-a", 10, Duration.ofSeconds(30))).hasSize(1);
+        assertThat(claimService.claimBatch("relay-b", 10, Duration.ofMinutes(1))).isEmpty();
+
+        clock.advance(Duration.ofSeconds(31));
+
+        List<OutboxEvent> reclaimed = claimService.claimBatch("relay-b", 10, Duration.ofMinutes(1));
+        assertThat(reclaimed).extracting(OutboxEvent::getOwner).containsExactly("relay-b");
+    }
+
+    @Test
+    void relayThatLostItsLeaseCannotMarkReclaimedEvents() {
+        outboxRepository.save(new OutboxEvent("aggregate-1", "Message", "MESSAGE_CREATED", "{}"));
+
+        List<OutboxEvent> stale = claimService.claimBatch("relay-a", 10, Duration.ofSeconds(30));
+        clock.advance(Duration.ofSeconds(31));
+        assertThat(claimService.claimBatch("relay-b", 10, Duration.ofMinutes(1))).hasSize(1);
+
+        List<Long> ids = stale.stream().map(OutboxEvent::getId).toList();
+        assertThat(outboxRepository.markAsProcessed(ids, "relay-a", now())).isZero();
+        assertThat(outboxRepository.markAsProcessed(ids, "relay-b", now())).isOne();
+    }
+
+    private LocalDateTime now() {
+        return LocalDateTime.now(clock).truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    // Lock timeouts between competing claims are expected; the relay simply tries again
+    private List<OutboxEvent> claim(String owner, int batchSize, Duration leaseDuration) {
+        while (true) {
+            try {
+                return claimService.claimBatch(owner, batchSize, leaseDuration);
+            } catch (TransientDataAccessException e) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class ClockConfig {
+
+        @Bean
+        MutableClock clock() {
+            return new MutableClock();
+        }
+    }
+
+    // Lets a test expire leases without sleeping
+    static class MutableClock extends Clock {
+
+        private volatile Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.systemDefault();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
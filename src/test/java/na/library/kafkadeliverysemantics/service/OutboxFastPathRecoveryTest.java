@@ -0,0 +1,163 @@
+package na.library.kafkadeliverysemantics.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import na.library.kafkadeliverysemantics.entity.OutboxEvent;
+import na.library.kafkadeliverysemantics.repository.OutboxRepository;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * A fast-path send that fails must leave its row to the scheduled sweep, with the shipped
+ * defaults: fast path on, claim-based relaying off.
+ */
+@DataJpaTest
+@Import({OutboxFastPathPublisher.class, OutboxRelayService.class, OutboxEventPublisher.class, OutboxClaimService.class,
+        OutboxFastPathRecoveryTest.TestConfig.class})
+@ActiveProfiles("exactly-once")
+@TestPropertySource(properties = {
+        "outbox.fast-path.enabled=true",
+        "outbox.fast-path.sweep-delay=30s",
+        "outbox.relay.claim.enabled=false",
+        "outbox.relay.claim.lease-duration=60s",
+        "outbox.relay.poll.min-interval=1h"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OutboxFastPathRecoveryTest {
+
+    @Autowired
+    private OutboxFastPathPublisher fastPath;
+
+    @Autowired
+    private OutboxRelayService relay;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private OutboxClaimServiceTest.MutableClock clock;
+
+    @MockitoBean(name = "outboxRelayKafkaTemplate")
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @MockitoBean(name = "outboxRelayProducerFactory")
+    private ProducerFactory<String, Object> producerFactory;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void kafkaAcceptsEverySend() {
+        KafkaOperations<String, Object> operations = mock(KafkaOperations.class);
+        when(operations.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+            ProducerRecord<String, Object> record = invocation.getArgument(0);
+            RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), 0, 0, 0, 0, 0);
+            return CompletableFuture.completedFuture(new SendResult<>(record, metadata));
+        });
+        doAnswer(invocation -> invocation.<KafkaOperations.OperationsCallback<String, Object, ?>>getArgument(0)
+                .doInOperations(operations)).when(kafkaTemplate).executeInTransaction(any());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        outboxRepository.deleteAll();
+    }
+
+    @Test
+    void failedFastPathSendIsReleasedAndSwept() {
+        OutboxEvent event = save("aggregate-1");
+        OutboxEvent later = save("aggregate-1");
+        doThrow(new KafkaException("broker down")).when(kafkaTemplate).executeInTransaction(any());
+
+        ReflectionTestUtils.invokeMethod(fastPath, "publish", event);
+
+        assertThat(outboxRepository.findById(event.getId())).get()
+                .satisfies(row -> assertThat(row.getOwner()).isNull())
+                .satisfies(row -> assertThat(row.getLeaseUntil()).isNull());
+
+        kafkaAcceptsEverySend();
+        clock.advance(Duration.ofSeconds(31));
+
+        assertThat(relay.relayMessages().relayed()).isEqualTo(2);
+        assertThat(outboxRepository.findAllById(List.of(event.getId(), later.getId())))
+                .allMatch(OutboxEvent::isProcessed);
+    }
+
+    @Test
+    void leaseLeftByACrashedFastPathIsSweptOnceItExpires() {
+        OutboxEvent event = save("aggregate-1");
+        LocalDateTime now = LocalDateTime.now(clock).truncatedTo(ChronoUnit.MILLIS);
+        outboxRepository.claimEvent(event.getId(), "crashed-instance", now.plusSeconds(60), now);
+
+        clock.advance(Duration.ofSeconds(31));
+        assertThat(relay.relayMessages().relayed()).isZero();
+
+        clock.advance(Duration.ofSeconds(30));
+        assertThat(relay.relayMessages().relayed()).isOne();
+        assertThat(outboxRepository.findById(event.getId())).get().matches(OutboxEvent::isProcessed);
+    }
+
+    private OutboxEvent save(String aggregateId) {
+        OutboxEvent event = new OutboxEvent(aggregateId, "Message", "MESSAGE_UPDATED", "{\"id\":\"message-1\"}");
+        event.setCreatedAt(LocalDateTime.now(clock));
+        return outboxRepository.save(event);
+    }
+
+    @TestConfiguration
+    static class TestConfig {
+
+        @Bean
+        OutboxClaimServiceTest.MutableClock clock() {
+            return new OutboxClaimServiceTest.MutableClock();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        TransactionTemplate dbTransactionTemplate(PlatformTransactionManager transactionManager) {
+            return new TransactionTemplate(transactionManager);
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+}
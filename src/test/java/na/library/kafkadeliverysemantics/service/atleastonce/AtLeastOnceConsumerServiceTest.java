@@ -0,0 +1,34 @@
+package na.library.kafkadeliverysemantics.service.atleastonce;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import na.library.kafkadeliverysemantics.entity.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class AtLeastOnceConsumerServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtLeastOnceConsumerService consumerService = new AtLeastOnceConsumerService(meterRegistry);
+
+    // A listener exception would send the record through the retry topics
+    @Test
+    void healthyMessageIsAcknowledgedWithoutRetry() {
+        ReflectionTestUtils.setField(consumerService, "simulatedFailureRate", 0.0);
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        Message message = new Message("message-1", "content", LocalDateTime.now());
+
+        assertThatCode(() -> consumerService.consume(message, acknowledgment, "at-least-once-topic"))
+                .doesNotThrowAnyException();
+
+        verify(acknowledgment).acknowledge();
+        assertThat(meterRegistry.find("atleastonce.processing.failures").counter()).isNull();
+    }
+}
@@ -0,0 +1,129 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import na.library.kafkadeliverysemantics.service.exactlyonce.CompactUuidProcessedMessageCache.Segment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactUuidProcessedMessageCacheTest {
+
+    // Capacity 16 gives 32 slots, so slot 31 is the last one in the table
+    private static final int CAPACITY = 16;
+    private static final long LAST_SLOT = 31;
+
+    @Test
+    void idsWithTheSameHashAreAllFound() {
+        Segment segment = new Segment(CAPACITY);
+        List<UUID> ids = randomIds(10);
+        for (UUID id : ids) {
+            segment.add(id.getMostSignificantBits(), id.getLeastSignificantBits(), 7);
+        }
+
+        for (UUID id : ids) {
+            assertThat(segment.contains(id.getMostSignificantBits(), id.getLeastSignificantBits(), 7)).isTrue();
+        }
+        UUID absent = UUID.randomUUID();
+        assertThat(segment.contains(absent.getMostSignificantBits(), absent.getLeastSignificantBits(), 7)).isFalse();
+        assertThat(segment.size()).isEqualTo(10);
+    }
+
+    @Test
+    void probingWrapsAroundTheEndOfTheTable() {
+        Segment segment = new Segment(CAPACITY);
+        List<UUID> ids = randomIds(3);
+        for (UUID id : ids) {
+            segment.add(id.getMostSignificantBits(), id.getLeastSignificantBits(), LAST_SLOT);
+        }
+
+        for (UUID id : ids) {
+            assertThat(segment.contains(id.getMostSignificantBits(), id.getLeastSignificantBits(), LAST_SLOT)).isTrue();
+        }
+        // Lands on slot 0, which the wrapped probe chain already occupies
+        assertThat(segment.contains(ids.get(1).getMostSignificantBits(), ids.get(1).getLeastSignificantBits(), 0)).isTrue();
+        UUID absent = UUID.randomUUID();
+        assertThat(segment.contains(absent.getMostSignificantBits(), absent.getLeastSignificantBits(), LAST_SLOT)).isFalse();
+    }
+
+    @Test
+    void fullGenerationDropsTheOlderOne() {
+        Segment segment = new Segment(CAPACITY);
+        List<UUID> oldest = randomIds(CAPACITY);
+        List<UUID> newer = randomIds(CAPACITY);
+        for (UUID id : oldest) {
+            assertThat(add(segment, id)).isFalse();
+        }
+
+        // The first add into a full generation rotates it into the previous one without losing anything
+        assertThat(add(segment, newer.get(0))).isFalse();
+        newer.subList(1, CAPACITY).forEach(id -> add(segment, id));
+        assertThat(oldest).allMatch(id -> contains(segment, id));
+        assertThat(segment.size()).isEqualTo(2 * CAPACITY);
+
+        UUID newest = UUID.randomUUID();
+        assertThat(add(segment, newest)).isTrue();
+        assertThat(oldest).noneMatch(id -> contains(segment, id));
+        assertThat(newer).allMatch(id -> contains(segment, id));
+        assertThat(contains(segment, newest)).isTrue();
+        assertThat(segment.size()).isEqualTo(CAPACITY + 1);
+    }
+
+    @Test
+    void nilUuidAndNonUuidIds() {
+        var cache = new CompactUuidProcessedMessageCache(1_000, new SimpleMeterRegistry());
+
+        String nil = new UUID(0, 0).toString();
+        assertThat(cache.contains(nil)).isFalse();
+        cache.add(nil);
+        assertThat(cache.contains(nil)).isTrue();
+
+        cache.add("outbox-42");
+        assertThat(cache.contains("outbox-42")).isFalse();
+    }
+
+    @Test
+    void concurrentWritersNeverLoseIds() throws Exception {
+        var cache = new CompactUuidProcessedMessageCache(1_000_000, new SimpleMeterRegistry());
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        List<Future<List<UUID>>> results = new ArrayList<>();
+        for (int writer = 0; writer < 8; writer++) {
+            results.add(writers.submit(() -> {
+                List<UUID> ids = randomIds(10_000);
+                ids.forEach(id -> cache.add(id.toString()));
+                return ids;
+            }));
+        }
+
+        for (Future<List<UUID>> result : results) {
+            assertThat(result.get()).allMatch(id -> cache.contains(id.toString()));
+        }
+        writers.shutdown();
+    }
+
+    private static boolean add(Segment segment, UUID id) {
+        return segment.add(id.getMostSignificantBits(), id.getLeastSignificantBits(), hashOf(id));
+    }
+
+    private static boolean contains(Segment segment, UUID id) {
+        return segment.contains(id.getMostSignificantBits(), id.getLeastSignificantBits(), hashOf(id));
+    }
+
+    private static long hashOf(UUID id) {
+        return id.getLeastSignificantBits();
+    }
+
+    private static List<UUID> randomIds(int count) {
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,80 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.service.KafkaRecordHeaders;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DedupAwareDeserializerTest {
+
+    private static final String TOPIC = "exactly-once-topic";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Set<String> processed = new HashSet<>();
+    private DedupAwareDeserializer deserializer;
+
+    @BeforeEach
+    void setUp() {
+        ProcessedMessageCache cache = new ProcessedMessageCache() {
+            @Override
+            public boolean contains(String messageId) {
+                return processed.contains(messageId);
+            }
+
+            @Override
+            public void add(String messageId) {
+                processed.add(messageId);
+            }
+        };
+        deserializer = new DedupAwareDeserializer(cache, meterRegistry);
+        deserializer.configure(Map.of(JsonDeserializer.VALUE_DEFAULT_TYPE, Message.class.getName(),
+                JsonDeserializer.TRUSTED_PACKAGES, "*"), false);
+    }
+
+    @Test
+    void knownDuplicateIsSkippedWithoutParsingThePayload() {
+        processed.add("message-1");
+        Headers headers = headersFor("message-1");
+        // Not JSON at all: parsing it would throw
+        byte[] payload = "not json".getBytes(StandardCharsets.UTF_8);
+
+        Object value = deserializer.deserialize(TOPIC, headers, payload);
+
+        assertThat(value).isNull();
+        assertThat(DedupAwareDeserializer.isSkippedDuplicate(value, headers)).isTrue();
+        assertThat(meterRegistry.counter("dedup.skipped.before-parse").count()).isEqualTo(1);
+    }
+
+    @Test
+    void unknownIdIsParsed() {
+        Headers headers = headersFor("message-2");
+        byte[] payload = "{\"id\":\"message-2\",\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+
+        Object value = deserializer.deserialize(TOPIC, headers, payload);
+
+        assertThat(value).isInstanceOf(Message.class);
+        assertThat(((Message) value).getId()).isEqualTo("message-2");
+        assertThat(DedupAwareDeserializer.isSkippedDuplicate(value, headers)).isFalse();
+        assertThatThrownBy(() -> deserializer.deserialize(TOPIC, headersFor("message-3"), "not json".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(RuntimeException.class);
+        assertThat(meterRegistry.counter("dedup.skipped.before-parse").count()).isZero();
+    }
+
+    private static Headers headersFor(String messageId) {
+        Headers headers = new RecordHeaders();
+        KafkaRecordHeaders.addString(headers, KafkaRecordHeaders.MESSAGE_ID, messageId);
+        return headers;
+    }
+}
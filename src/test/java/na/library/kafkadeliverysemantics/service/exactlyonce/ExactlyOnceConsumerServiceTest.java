@@ -0,0 +1,87 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import na.library.kafkadeliverysemantics.entity.Message;
+import na.library.kafkadeliverysemantics.entity.ProcessedMessage;
+import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@Import({ExactlyOnceConsumerService.class, ExactlyOnceConsumerServiceTest.TemplateConfig.class})
+@ActiveProfiles("exactly-once")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ExactlyOnceConsumerServiceTest {
+
+    private static final String PARTITION = "exactly-once-topic-0";
+
+    @Autowired
+    private ExactlyOnceConsumerService consumerService;
+
+    @Autowired
+    private MessageProcessingRepository messageRepository;
+
+    @MockitoBean
+    private ProcessedMessageCache processedMessages;
+
+    @MockitoBean
+    private PartitionDedupState partitionDedupState;
+
+    @MockitoBean
+    private ProcessedMessageBloomFilter bloomFilter;
+
+    @BeforeEach
+    void bloomFilterHasNeverSeenAnyId() {
+        when(bloomFilter.mightContain(anyString())).thenReturn(false);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        messageRepository.deleteAll();
+    }
+
+    @Test
+    void bloomNegativeForAnIdRecordedByAnotherInstanceIsADuplicate() {
+        messageRepository.saveAndFlush(new ProcessedMessage("message-1", System.currentTimeMillis(), PARTITION));
+
+        assertThat(consumerService.processOnce(message("message-1"), PARTITION)).isFalse();
+        assertThat(messageRepository.count()).isOne();
+    }
+
+    @Test
+    void bloomNegativeForANewIdIsProcessedOnce() {
+        assertThat(consumerService.processOnce(message("message-2"), PARTITION)).isTrue();
+        assertThat(consumerService.processOnce(message("message-2"), PARTITION)).isFalse();
+        assertThat(messageRepository.existsById("message-2")).isTrue();
+    }
+
+    private static Message message(String id) {
+        return new Message(id, "content", LocalDateTime.now());
+    }
+
+    @TestConfiguration
+    static class TemplateConfig {
+
+        @Bean
+        TransactionTemplate dbTransactionTemplate(PlatformTransactionManager transactionManager) {
+            return new TransactionTemplate(transactionManager);
+        }
+    }
+}
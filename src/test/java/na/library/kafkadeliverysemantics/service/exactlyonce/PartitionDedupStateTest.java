@@ -0,0 +1,71 @@
+package na.library.kafkadeliverysemantics.service.exactlyonce;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import na.library.kafkadeliverysemantics.repository.MessageProcessingRepository;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PartitionDedupStateTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("exactly-once-topic", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("exactly-once-topic", 1);
+
+    private final MessageProcessingRepository messageRepository = mock(MessageProcessingRepository.class);
+    private final Consumer<?, ?> consumer = mock(Consumer.class);
+    private PartitionDedupState state;
+
+    @BeforeEach
+    void setUp() {
+        state = new PartitionDedupState(messageRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(state, "partitionCapacity", 3);
+        // Newest first, as findRecentMessageIds returns them
+        when(messageRepository.findRecentMessageIds(eq(PARTITION_0.toString()), any(Limit.class)))
+                .thenReturn(List.of("id-3", "id-2", "id-1"));
+        when(messageRepository.findRecentMessageIds(eq(PARTITION_1.toString()), any(Limit.class)))
+                .thenReturn(List.of("id-9"));
+    }
+
+    @Test
+    void assignedPartitionIsWarmedAndRevokedPartitionIsDropped() {
+        String partition0 = PARTITION_0.toString();
+        assertThat(state.contains(partition0, "id-1")).isFalse();
+
+        state.onPartitionsAssigned(consumer, List.of(PARTITION_0, PARTITION_1));
+        assertThat(List.of("id-1", "id-2", "id-3")).allMatch(id -> state.contains(partition0, id));
+        assertThat(state.contains(PARTITION_1.toString(), "id-9")).isTrue();
+        // State is per partition
+        assertThat(state.contains(PARTITION_1.toString(), "id-1")).isFalse();
+
+        state.onPartitionsRevokedAfterCommit(consumer, List.of(PARTITION_0));
+        assertThat(state.contains(partition0, "id-1")).isFalse();
+        state.add(partition0, "id-4");
+        assertThat(state.contains(partition0, "id-4")).isFalse();
+        assertThat(state.contains(PARTITION_1.toString(), "id-9")).isTrue();
+
+        state.onPartitionsLost(consumer, List.of(PARTITION_1));
+        assertThat(state.contains(PARTITION_1.toString(), "id-9")).isFalse();
+    }
+
+    @Test
+    void newIdsEvictTheOldestOnceTheCapacityIsReached() {
+        String partition0 = PARTITION_0.toString();
+        state.onPartitionsAssigned(consumer, List.of(PARTITION_0));
+
+        state.add(partition0, "id-4");
+
+        assertThat(state.contains(partition0, "id-1")).isFalse();
+        assertThat(List.of("id-2", "id-3", "id-4")).allMatch(id -> state.contains(partition0, id));
+    }
+}
@@ -0,0 +1,130 @@
+package na.library.kafkadeliverysemantics.service.flowcontrol;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BackpressureDispatcherTest {
+
+    private static final String LISTENER_ID = "listener";
+    private static final TopicPartition PARTITION = new TopicPartition("topic", 0);
+
+    private final KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+    private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+    private final ConsumerRecordRecoverer recoverer = mock(ConsumerRecordRecoverer.class);
+    private final BackpressureDispatcher dispatcher = new BackpressureDispatcher(registry, new SimpleMeterRegistry());
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @BeforeEach
+    void startDispatcher() {
+        when(registry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+        ReflectionTestUtils.setField(dispatcher, "highWatermark", 3);
+        ReflectionTestUtils.setField(dispatcher, "lowWatermark", 1);
+        ReflectionTestUtils.setField(dispatcher, "workers", 2);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "retryBackoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(dispatcher, "revokeTimeout", Duration.ofMillis(200));
+        dispatcher.startLanes();
+    }
+
+    @AfterEach
+    void stopDispatcher() {
+        release.countDown();
+        dispatcher.stopLanes();
+    }
+
+    @Test
+    void partitionIsPausedAtTheHighWatermarkAndResumedAtTheLowWatermark() {
+        CountDownLatch drained = new CountDownLatch(3);
+
+        dispatch(0, () -> await(release));
+        dispatch(1, drained::countDown);
+        verify(container, never()).pausePartition(PARTITION);
+
+        dispatch(2, drained::countDown);
+        verify(container).pausePartition(PARTITION);
+
+        dispatch(3, drained::countDown);
+        release.countDown();
+
+        verify(container, timeout(1_000)).resumePartition(PARTITION);
+        assertThat(await(drained)).isTrue();
+    }
+
+    @Test
+    void workIsAcknowledgedOnceItSucceeds() {
+        Acknowledgment acknowledgment = dispatch(0, () -> { });
+
+        verify(acknowledgment, timeout(1_000)).acknowledge();
+        verify(recoverer, never()).accept(any(), any());
+    }
+
+    @Test
+    void poisonRecordIsRecoveredAfterItsAttemptsAndAcknowledged() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        Acknowledgment acknowledgment = dispatch(0, () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("poison");
+        });
+
+        verify(acknowledgment, timeout(1_000)).acknowledge();
+        verify(recoverer).accept(any(), any(IllegalStateException.class));
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void revokedPartitionDropsQueuedWorkWithoutAcknowledging() {
+        AtomicInteger ran = new AtomicInteger();
+        dispatch(0, () -> await(release));
+        dispatch(1, ran::incrementAndGet);
+        Acknowledgment queued = dispatch(2, ran::incrementAndGet);
+
+        dispatcher.onPartitionsRevokedBeforeCommit(null, List.of(PARTITION));
+        release.countDown();
+
+        verify(container, timeout(1_000)).resumePartition(PARTITION);
+        verify(queued, after(200).never()).acknowledge();
+        assertThat(ran).hasValue(0);
+    }
+
+    private Acknowledgment dispatch(long offset, Runnable work) {
+        Acknowledgment acknowledgment = mock(Acknowledgment.class);
+        ConsumerRecord<String, String> record =
+                new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "key", "value");
+        dispatcher.dispatch(LISTENER_ID, record, acknowledgment, work, recoverer);
+        return acknowledgment;
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package na.library.kafkadeliverysemantics.service.parallel;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class KeyOrderedParallelProcessorTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("topic", 0);
+
+    private final KeyOrderedParallelProcessor processor = new KeyOrderedParallelProcessor();
+    private final Consumer<?, ?> consumer = mock(Consumer.class);
+
+    @BeforeEach
+    void startProcessor() {
+        ReflectionTestUtils.setField(processor, "workers", 4);
+        ReflectionTestUtils.setField(processor, "maxAttempts", 3);
+        ReflectionTestUtils.setField(processor, "retryBackoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(processor, "maxRetryBackoff", Duration.ofMillis(4));
+        processor.startLanes();
+    }
+
+    @AfterEach
+    void stopProcessor() {
+        processor.stopLanes();
+    }
+
+    @Test
+    void recordsOfTheSameKeyAreHandledInOffsetOrder() {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        for (int offset = 0; offset < 200; offset++) {
+            records.add(record(offset, "key-" + offset % 5));
+        }
+        Map<String, List<Long>> seen = new ConcurrentHashMap<>();
+
+        processor.process(records, record -> {
+            pause();
+            seen.computeIfAbsent(record.key(), key -> new CopyOnWriteArrayList<>()).add(record.offset());
+        });
+
+        assertThat(seen).hasSize(5);
+        seen.values().forEach(offsets -> assertThat(offsets).isSorted().hasSize(40));
+    }
+
+    @Test
+    void failedRecordHoldsBackLaterRecordsOfItsKeyOnly() {
+        List<ConsumerRecord<String, String>> records = List.of(record(0, "a"), record(1, "a"), record(2, "b"));
+        List<Long> handled = new CopyOnWriteArrayList<>();
+
+        OffsetTracker tracker = processor.process(records, record -> {
+            if (record.offset() == 0) {
+                throw new IllegalStateException("boom");
+            }
+            handled.add(record.offset());
+        });
+
+        assertThat(handled).containsExactly(2L);
+        assertThat(tracker.firstIncompleteOffsets()).containsEntry(PARTITION, 0L);
+    }
+
+    @Test
+    void poisonRecordIsRetriedThenRecoveredAndCommittedPast() {
+        List<ConsumerRecord<String, String>> records = List.of(record(0, "a"), record(1, "a"));
+        AtomicInteger attempts = new AtomicInteger();
+        ConsumerRecordRecoverer recoverer = mock(ConsumerRecordRecoverer.class);
+
+        processor.processAndCommit(records, consumer, record -> {
+            if (record.offset() == 0) {
+                attempts.incrementAndGet();
+                throw new IllegalStateException("poison");
+            }
+        }, recoverer);
+
+        assertThat(attempts).hasValue(3);
+        verify(recoverer).accept(same(records.get(0)), any(IllegalStateException.class));
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(2)));
+        verify(consumer, never()).seek(any(TopicPartition.class), any(Long.class));
+    }
+
+    @Test
+    void recordIsRedeliveredWhenRecoveryFails() {
+        List<ConsumerRecord<String, String>> records = List.of(record(0, "a"), record(1, "a"));
+        ConsumerRecordRecoverer recoverer = (record, e) -> {
+            throw new IllegalStateException("dead-letter topic unavailable");
+        };
+
+        processor.processAndCommit(records, consumer, record -> {
+            throw new IllegalStateException("poison");
+        }, recoverer);
+
+        verify(consumer).commitSync(Map.of(PARTITION, new OffsetAndMetadata(0)));
+        verify(consumer, times(1)).seek(PARTITION, 0L);
+    }
+
+    private static ConsumerRecord<String, String> record(long offset, String key) {
+        return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, key, "value");
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package na.library.kafkadeliverysemantics.service.parallel;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class OffsetTrackerTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("topic", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("topic", 1);
+
+    private final OffsetTracker tracker = new OffsetTracker();
+
+    @Test
+    void onlyTheContiguousCompletedPrefixIsCommittable() {
+        ConsumerRecord<String, String> first = record(0, 10);
+        ConsumerRecord<String, String> second = record(0, 11);
+        ConsumerRecord<String, String> third = record(0, 12);
+        List.of(first, second, third).forEach(tracker::register);
+
+        tracker.complete(first);
+        tracker.complete(third);
+
+        assertThat(tracker.committableOffsets()).containsEntry(PARTITION_0, new OffsetAndMetadata(11));
+        assertThat(tracker.firstIncompleteOffsets()).containsOnly(entry(PARTITION_0, 11L));
+
+        tracker.complete(second);
+
+        assertThat(tracker.committableOffsets()).containsEntry(PARTITION_0, new OffsetAndMetadata(13));
+        assertThat(tracker.firstIncompleteOffsets()).isEmpty();
+    }
+
+    @Test
+    void partitionsAreTrackedIndependently() {
+        ConsumerRecord<String, String> blocked = record(0, 5);
+        ConsumerRecord<String, String> done = record(1, 7);
+        tracker.register(blocked);
+        tracker.register(done);
+
+        tracker.complete(done);
+
+        assertThat(tracker.committableOffsets())
+                .containsEntry(PARTITION_0, new OffsetAndMetadata(5))
+                .containsEntry(PARTITION_1, new OffsetAndMetadata(8));
+        assertThat(tracker.firstIncompleteOffsets()).containsOnlyKeys(PARTITION_0);
+    }
+
+    @Test
+    void endOffsetsCoverTheHighestOffsetOfEveryPartition() {
+        List<ConsumerRecord<String, String>> records = List.of(record(0, 3), record(1, 9), record(0, 4), record(1, 8));
+
+        assertThat(OffsetTracker.endOffsetsOf(records))
+                .containsEntry(PARTITION_0, new OffsetAndMetadata(5))
+                .containsEntry(PARTITION_1, new OffsetAndMetadata(10));
+    }
+
+    private static ConsumerRecord<String, String> record(int partition, long offset) {
+        return new ConsumerRecord<>("topic", partition, offset, "key", "value");
+    }
+}
@@ -0,0 +1,63 @@
+package na.library.kafkadeliverysemantics.service.quarantine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import na.library.kafkadeliverysemantics.repository.QuarantinedRecordRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import({QuarantineService.class, QuarantineServiceTest.MetricsConfig.class})
+@ActiveProfiles("exactly-once")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class QuarantineServiceTest {
+
+    @Autowired
+    private QuarantineService quarantineService;
+
+    @Autowired
+    private QuarantinedRecordRepository repository;
+
+    @MockitoBean(name = "quarantineReplayKafkaTemplate")
+    private KafkaTemplate<String, byte[]> replayTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void redeliveredRecordIsQuarantinedOnce() {
+        ConsumerRecord<String, Object> record = new ConsumerRecord<>("at-most-once-topic", 1, 42, "key", null);
+        DeserializationException failure = new DeserializationException("bad json", new byte[]{'{'}, false, null);
+
+        quarantineService.accept(record, failure);
+        quarantineService.accept(record, failure);
+
+        assertThat(repository.findAll()).singleElement()
+                .satisfies(quarantined -> assertThat(quarantined.getOffset()).isEqualTo(42));
+    }
+
+    @TestConfiguration
+    static class MetricsConfig {
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}